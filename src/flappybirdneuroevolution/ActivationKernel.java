@@ -0,0 +1,58 @@
+package flappybirdneuroevolution;
+
+/**
+ *
+ * @author Preston Tang
+ *
+ * An activation function that can be applied to one value or to a whole
+ * run of values at once. The forward passes use the run versions, so
+ * implementations should override them with a plain loop of their own
+ *
+ */
+public interface ActivationKernel {
+
+    /**
+     * @param x The weighted sum going into a neuron
+     *
+     * @return The neuron's output
+     */
+    double apply(double x);
+
+    /**
+     * The derivative, written in terms of the neuron's output like
+     * {@link Mat#SIGMOID_DERIVATIVE}.
+     *
+     * @param y The neuron's output
+     *
+     * @return The slope of the function at that output
+     */
+    double derivative(double y);
+
+    /**
+     * Replaces values[from] to values[to - 1] with their activation.
+     */
+    default void apply(double[] values, int from, int to) {
+        for (int i = from; i < to; i++) {
+            values[i] = apply(values[i]);
+        }
+    }
+
+    /**
+     * Replaces outputs[from] to outputs[to - 1] with their derivative.
+     */
+    default void derivative(double[] outputs, int from, int to) {
+        for (int i = from; i < to; i++) {
+            outputs[i] = derivative(outputs[i]);
+        }
+    }
+
+    /**
+     * The float version of {@link #apply(double[], int, int)}, for brains
+     * running at {@link Precision#FLOAT}.
+     */
+    default void apply(float[] values, int from, int to) {
+        for (int i = from; i < to; i++) {
+            values[i] = (float) apply(values[i]);
+        }
+    }
+}
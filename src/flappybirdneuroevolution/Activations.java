@@ -0,0 +1,259 @@
+package flappybirdneuroevolution;
+
+import flappybirdneuroevolution.NeuralNetwork.ActivationFunction;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ *
+ * @author Preston Tang
+ *
+ * Activation kernels looked up by name. Comes with exact sigmoid and tanh,
+ * faster approximations of both, ReLU and hard sigmoid, and more can be
+ * added with register().
+ *
+ * The approximations are good to about 1e-4, which is plenty when all a
+ * bird does with its outputs is compare them
+ *
+ */
+public final class Activations {
+
+    public static final String SIGMOID = "sigmoid";
+    public static final String SIGMOID_FAST = "sigmoid-fast";
+    public static final String TANH = "tanh";
+    public static final String TANH_FAST = "tanh-fast";
+    public static final String RELU = "relu";
+    public static final String HARD_SIGMOID = "hard-sigmoid";
+
+    private static final Map<String, ActivationKernel> KERNELS = new ConcurrentHashMap<>();
+
+    static {
+        register(SIGMOID, new Sigmoid());
+        register(SIGMOID_FAST, new TableSigmoid());
+        register(TANH, new Tanh());
+        register(TANH_FAST, new RationalTanh());
+        register(RELU, new Relu());
+        register(HARD_SIGMOID, new HardSigmoid());
+    }
+
+    private Activations() {
+    }
+
+    public static void register(String name, ActivationKernel kernel) {
+        KERNELS.put(name, kernel);
+    }
+
+    public static ActivationKernel get(String name) {
+        ActivationKernel kernel = KERNELS.get(name);
+        if (kernel == null) {
+            throw new IllegalArgumentException("No activation called " + name + ", try one of " + names());
+        }
+        return kernel;
+    }
+
+    // The kernel wrapped up for NeuralNetwork.setActivationFunction
+    public static ActivationFunction function(String name) {
+        return new ActivationFunction(get(name));
+    }
+
+    public static Set<String> names() {
+        return KERNELS.keySet();
+    }
+
+    private static final class Sigmoid implements ActivationKernel {
+
+        @Override
+        public double apply(double x) {
+            return 1 / (1 + Math.exp(-x));
+        }
+
+        @Override
+        public double derivative(double y) {
+            return y * (1 - y);
+        }
+
+        @Override
+        public void apply(double[] values, int from, int to) {
+            for (int i = from; i < to; i++) {
+                values[i] = 1 / (1 + Math.exp(-values[i]));
+            }
+        }
+
+        @Override
+        public void derivative(double[] outputs, int from, int to) {
+            for (int i = from; i < to; i++) {
+                outputs[i] = outputs[i] * (1 - outputs[i]);
+            }
+        }
+    }
+
+    // Sigmoid read from a table over [-16, 16] with linear interpolation
+    // between entries, and flat past the ends
+    private static final class TableSigmoid implements ActivationKernel {
+
+        private static final double RANGE = 16;
+        private static final int STEPS = 8192;
+        private static final double SCALE = STEPS / (2 * RANGE);
+
+        private final double[] table = new double[STEPS + 2];
+
+        TableSigmoid() {
+            for (int i = 0; i < table.length; i++) {
+                table[i] = 1 / (1 + Math.exp(-(i / SCALE - RANGE)));
+            }
+        }
+
+        @Override
+        public double apply(double x) {
+            double pos = (Math.max(-RANGE, Math.min(RANGE, x)) + RANGE) * SCALE;
+            int index = (int) pos;
+            double frac = pos - index;
+            return table[index] + (table[index + 1] - table[index]) * frac;
+        }
+
+        @Override
+        public double derivative(double y) {
+            return y * (1 - y);
+        }
+
+        @Override
+        public void apply(double[] values, int from, int to) {
+            final double[] table = this.table;
+            for (int i = from; i < to; i++) {
+                double pos = (Math.max(-RANGE, Math.min(RANGE, values[i])) + RANGE) * SCALE;
+                int index = (int) pos;
+                double frac = pos - index;
+                values[i] = table[index] + (table[index + 1] - table[index]) * frac;
+            }
+        }
+
+        @Override
+        public void derivative(double[] outputs, int from, int to) {
+            for (int i = from; i < to; i++) {
+                outputs[i] = outputs[i] * (1 - outputs[i]);
+            }
+        }
+    }
+
+    private static final class Tanh implements ActivationKernel {
+
+        @Override
+        public double apply(double x) {
+            return Math.tanh(x);
+        }
+
+        @Override
+        public double derivative(double y) {
+            return 1 - y * y;
+        }
+
+        @Override
+        public void apply(double[] values, int from, int to) {
+            for (int i = from; i < to; i++) {
+                values[i] = Math.tanh(values[i]);
+            }
+        }
+
+        @Override
+        public void derivative(double[] outputs, int from, int to) {
+            for (int i = from; i < to; i++) {
+                outputs[i] = 1 - outputs[i] * outputs[i];
+            }
+        }
+    }
+
+    // Tanh from the start of its continued fraction, a ratio of two
+    // polynomials that's accurate until about 5 and clamped past that
+    private static final class RationalTanh implements ActivationKernel {
+
+        private static final double LIMIT = 4.97;
+
+        private static double tanh(double x) {
+            double c = Math.max(-LIMIT, Math.min(LIMIT, x));
+            double c2 = c * c;
+            double y = c * (135135 + c2 * (17325 + c2 * (378 + c2)))
+                    / (135135 + c2 * (62370 + c2 * (3150 + 28 * c2)));
+            return Math.max(-1, Math.min(1, y));
+        }
+
+        @Override
+        public double apply(double x) {
+            return tanh(x);
+        }
+
+        @Override
+        public double derivative(double y) {
+            return 1 - y * y;
+        }
+
+        @Override
+        public void apply(double[] values, int from, int to) {
+            for (int i = from; i < to; i++) {
+                values[i] = tanh(values[i]);
+            }
+        }
+
+        @Override
+        public void derivative(double[] outputs, int from, int to) {
+            for (int i = from; i < to; i++) {
+                outputs[i] = 1 - outputs[i] * outputs[i];
+            }
+        }
+    }
+
+    private static final class Relu implements ActivationKernel {
+
+        @Override
+        public double apply(double x) {
+            return Math.max(0, x);
+        }
+
+        @Override
+        public double derivative(double y) {
+            return y > 0 ? 1 : 0;
+        }
+
+        @Override
+        public void apply(double[] values, int from, int to) {
+            for (int i = from; i < to; i++) {
+                values[i] = Math.max(0, values[i]);
+            }
+        }
+
+        @Override
+        public void derivative(double[] outputs, int from, int to) {
+            for (int i = from; i < to; i++) {
+                outputs[i] = outputs[i] > 0 ? 1 : 0;
+            }
+        }
+    }
+
+    // The straight line 0.2x + 0.5, clamped to between 0 and 1
+    private static final class HardSigmoid implements ActivationKernel {
+
+        @Override
+        public double apply(double x) {
+            return Math.max(0, Math.min(1, 0.2 * x + 0.5));
+        }
+
+        @Override
+        public double derivative(double y) {
+            return y > 0 && y < 1 ? 0.2 : 0;
+        }
+
+        @Override
+        public void apply(double[] values, int from, int to) {
+            for (int i = from; i < to; i++) {
+                values[i] = Math.max(0, Math.min(1, 0.2 * values[i] + 0.5));
+            }
+        }
+
+        @Override
+        public void derivative(double[] outputs, int from, int to) {
+            for (int i = from; i < to; i++) {
+                outputs[i] = outputs[i] > 0 && outputs[i] < 1 ? 0.2 : 0;
+            }
+        }
+    }
+}
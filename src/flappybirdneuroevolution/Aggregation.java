@@ -0,0 +1,58 @@
+package flappybirdneuroevolution;
+
+import java.util.Arrays;
+
+/**
+ *
+ * @author Preston Tang
+ *
+ * Ways of turning a bird's scores on several courses into one score:
+ *
+ * MEAN is the average, every course counts the same.
+ * MIN is the worst course, so only birds that can fly anywhere do well.
+ * QUANTILE is in between, a low quantile ignores a few bad courses
+ * without rewarding a few lucky ones
+ *
+ */
+public enum Aggregation {
+
+    MEAN {
+        @Override
+        public double combine(double[] scores, int count, double quantile) {
+            double sum = 0;
+            for (int i = 0; i < count; i++) {
+                sum += scores[i];
+            }
+            return sum / count;
+        }
+    },
+    MIN {
+        @Override
+        public double combine(double[] scores, int count, double quantile) {
+            double min = scores[0];
+            for (int i = 1; i < count; i++) {
+                min = Math.min(min, scores[i]);
+            }
+            return min;
+        }
+    },
+    QUANTILE {
+        @Override
+        public double combine(double[] scores, int count, double quantile) {
+            Arrays.sort(scores, 0, count);
+
+            // Between the two closest scores, 0 is the worst and 1 the best
+            double at = Math.max(0, Math.min(1, quantile)) * (count - 1);
+            int below = (int) at;
+            int above = Math.min(count - 1, below + 1);
+            return scores[below] + (scores[above] - scores[below]) * (at - below);
+        }
+    };
+
+    /**
+     * @param scores One score per course, QUANTILE sorts them in place
+     * @param count How many courses there are, at least 1
+     * @param quantile Only used by QUANTILE
+     */
+    public abstract double combine(double[] scores, int count, double quantile);
+}
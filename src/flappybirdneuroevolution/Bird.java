@@ -1,8 +1,5 @@
 package flappybirdneuroevolution;
 
-import flappybirdneuroevolution.NeuralNetwork.ActivationFunction;
-import javafx.scene.shape.Rectangle;
-
 /**
  *
  * @author Preston Tang
@@ -10,8 +7,13 @@ import javafx.scene.shape.Rectangle;
  * Represents the birds in the simulation
  * 
  */
-public class Bird extends Rectangle {
+public class Bird {
+
+    // Every bird is a square of this size
+    public static final double SIZE = 20;
 
+    private double x, y;
+    private double width = SIZE, height = SIZE;
     private double yVelocity;
     private double jumpStrength;
     private boolean alive;
@@ -21,20 +23,30 @@ public class Bird extends Rectangle {
     private double fitness;
     private double mutationRate;
 
+    // Reused every tick so action() doesn't allocate
+    private final double[] inputs = new double[4];
+    private final double[] outputs = new double[2];
+
     // Initializes the bird with a new brain
     public Bird(double mutationRate, double jumpStrength, double gameWidth, double gameHeight) {
+        this(mutationRate, jumpStrength, gameWidth, gameHeight, Mutator.current());
+    }
+
+    // Initializes the bird with a new brain made from the mutator's stream
+    public Bird(double mutationRate, double jumpStrength, double gameWidth, double gameHeight,
+            Mutator mutator) {
         this.jumpStrength = jumpStrength;
         yVelocity = 0.0;
         alive = true;
         score = 0;
         fitness = 0;
         this.mutationRate = mutationRate;
-        super.setTranslateY(gameHeight / 2);
-        super.setTranslateX(gameWidth * 0.05);
+        this.y = gameHeight / 2;
+        this.x = gameWidth * 0.05;
 
         brain = new NeuralNetwork(4, 3, 2);
-        brain.setActivationFunction(new ActivationFunction(Mat.SIGMOID, Mat.SIGMOID_DERIVATIVE));
-        brain.randomizeBoth();
+        brain.setActivationFunction(Activations.function(Activations.SIGMOID));
+        brain.randomizeBoth(mutator);
 
         this.gameWidth = gameWidth;
         this.gameHeight = gameHeight;
@@ -42,25 +54,72 @@ public class Bird extends Rectangle {
 
     // Initializes the bird with a mutated copy of the old brain
     public Bird(NeuralNetwork brain, double mutationRate, double jumpStrength, double gameWidth, double gameHeight) {
+        this(brain, mutationRate, jumpStrength, gameWidth, gameHeight, Mutator.current());
+    }
+
+    // Initializes the bird with a copy of the old brain mutated from the mutator's stream
+    public Bird(NeuralNetwork brain, double mutationRate, double jumpStrength, double gameWidth, double gameHeight,
+            Mutator mutator) {
         this.brain = brain.clone();
         this.mutationRate = mutationRate;
 
         // Mutation
-        this.brain.mutateBiases(mutationRate);
-        this.brain.mutateWeights(mutationRate);
+        this.brain.mutateBiases(mutationRate, mutator);
+        this.brain.mutateWeights(mutationRate, mutator);
 
         this.jumpStrength = jumpStrength;
         yVelocity = 0.0;
         alive = true;
         score = 0;
         fitness = 0;
-        super.setTranslateY(gameHeight / 2);
-        super.setTranslateX(gameWidth * 0.05);
+        this.y = gameHeight / 2;
+        this.x = gameWidth * 0.05;
 
         this.gameWidth = gameWidth;
         this.gameHeight = gameHeight;
     }
 
+    // Wraps an existing brain as is, without copying or mutating it
+    private Bird(NeuralNetwork brain, double jumpStrength, double gameWidth, double gameHeight) {
+        this.brain = brain;
+        this.jumpStrength = jumpStrength;
+        this.gameWidth = gameWidth;
+        this.gameHeight = gameHeight;
+        reset();
+    }
+
+    /**
+     * A bird that thinks with the given brain itself rather than a
+     * mutated copy of it. GenomeArena uses this to make birds whose
+     * brains are views into its arrays.
+     */
+    public static Bird withBrain(NeuralNetwork brain, double mutationRate, double jumpStrength,
+            double gameWidth, double gameHeight) {
+        Bird b = new Bird(brain, jumpStrength, gameWidth, gameHeight);
+        b.mutationRate = mutationRate;
+        return b;
+    }
+
+    // A bird with its own copy of this bird's brain, score and state
+    public Bird copy() {
+        Bird b = withBrain(brain.clone(), mutationRate, jumpStrength, gameWidth, gameHeight);
+        b.x = x;
+        b.y = y;
+        b.yVelocity = yVelocity;
+        b.alive = alive;
+        b.score = score;
+        b.fitness = fitness;
+        return b;
+    }
+
+    // Makes the bird like new, alive at the start with no score
+    public void reset() {
+        alive = true;
+        score = 0;
+        fitness = 0;
+        resetPosition();
+    }
+
     public void jump() {
         yVelocity = 0;
         yVelocity -= jumpStrength;
@@ -80,23 +139,53 @@ public class Bird extends Rectangle {
             yVelocity = -12.5;
         }
 
-        this.setTranslateY(this.getTranslateY() + yVelocity);
+        y += yVelocity;
     }
 
     // Could technically be done with just 1 output neuron
     // Professor Daniel Shiffman used 2 so I'm using 2 as well
-    public void action(PipeGroup p) {
+    public void action(Pipe p) {
         // Inputs after normalized
-        double[] inputs = {p.getTop() / gameHeight, p.getBottom() / gameHeight,
-            (this.getTranslateY() + (this.getHeight() / 2)) / gameHeight, this.yVelocity / 12.5};
+        inputs[0] = p.getTop() / gameHeight;
+        inputs[1] = p.getBottom() / gameHeight;
+        inputs[2] = (y + (height / 2)) / gameHeight;
+        inputs[3] = this.yVelocity / 12.5;
 
-        double[] outputs = brain.process(inputs);
+        brain.process(inputs, outputs);
 
         if (outputs[0] > outputs[1]) {
             this.jump();
         }
     }
 
+    public double getX() {
+        return x;
+    }
+
+    public double getY() {
+        return y;
+    }
+
+    public void setY(double y) {
+        this.y = y;
+    }
+
+    public double getYVelocity() {
+        return yVelocity;
+    }
+
+    public void setYVelocity(double yVelocity) {
+        this.yVelocity = yVelocity;
+    }
+
+    public double getWidth() {
+        return width;
+    }
+
+    public double getHeight() {
+        return height;
+    }
+
     public void setAlive(boolean alive) {
         this.alive = alive;
     }
@@ -125,15 +214,27 @@ public class Bird extends Rectangle {
         return brain;
     }
 
+    public double getMutationRate() {
+        return mutationRate;
+    }
+
     public Bird mate(Bird b) {
-        return new Bird(brain.quoteBreedUnquote(b.getBrain()), mutationRate, jumpStrength,
-                gameWidth, gameHeight);
+        return mate(b, Mutator.current());
+    }
+
+    public Bird mate(Bird b, Mutator mutator) {
+        return mate(b, Crossover.UNIFORM, mutator);
+    }
+
+    public Bird mate(Bird b, Crossover crossover, Mutator mutator) {
+        return new Bird(brain.crossover(b.getBrain(), crossover, mutator), mutationRate, jumpStrength,
+                gameWidth, gameHeight, mutator);
     }
     
     // Moves bird back to starting location
     public void resetPosition() {
-        super.setTranslateY(gameHeight / 2);
-        super.setTranslateX(gameWidth * 0.05);
+        y = gameHeight / 2;
+        x = gameWidth * 0.05;
         yVelocity = 0;
     }
 }
@@ -0,0 +1,191 @@
+package flappybirdneuroevolution;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ *
+ * @author Preston Tang
+ *
+ * Turns a generation of scored birds into the next one. The best birds
+ * go through unchanged, the rest are children of pairs from a parent
+ * pool picked by fitness, all bred into the next half of a GenomeArena.
+ *
+ * Simulation uses this after its birds have played, and EvaluatedTrainer
+ * after its birds have been scored somewhere else
+ *
+ */
+public class Breeder {
+
+    private final Settings settings;
+    private final GenomeArena arena;
+
+    // Picks the parent pool, every chunk of children gets a stream split
+    // off from it
+    private final Mutator mutator;
+
+    // null breeds everything on the calling thread
+    private final ForkJoinPool workers;
+
+    // Picks parents from the scored birds, by their fitness
+    private final Selection.Selector selector;
+    private double[] fitness = new double[0];
+
+    // Children are bred in chunks of this many, each chunk with its own
+    // random stream. Changing it changes the children of a seeded run
+    private static final int BIRDS_PER_CHUNK = 64;
+
+    // Fewer birds than this per task isn't worth handing to another thread
+    private static final int MIN_BIRDS_PER_TASK = 256;
+
+    // What breed() hands to the breeding threads
+    private Bird[] elites = new Bird[0];
+    private int eliteCount;
+    private Bird[] parents = new Bird[0];
+    private int pairs;
+    private long breedSeed;
+
+    public Breeder(Settings settings, GenomeArena arena, Mutator mutator, ForkJoinPool workers) {
+        this.settings = settings;
+        this.arena = arena;
+        this.mutator = mutator;
+        this.workers = workers;
+        selector = settings.selection.create(settings);
+    }
+
+    /**
+     * Breeds the next generation into the arena. The arena isn't swapped,
+     * so the scored birds can still be looked at until it is.
+     *
+     * @param scored The birds that just played, with their scores set
+     * @param children Gets every bird of the next generation, the elites
+     * first and best first
+     */
+    public void breed(List<Bird> scored, List<Bird> children) {
+        int capacity = arena.getCapacity();
+
+        prepareSelection(scored);
+
+        eliteCount = pickElites(scored, Math.min(settings.elites, capacity));
+
+        int pool = Math.max(2, (int) Math.round(settings.parentPercentage * settings.populationSize));
+        pairs = pool / 2;
+        if (parents.length < pairs * 2) {
+            parents = new Bird[pairs * 2];
+        }
+        for (int i = 0; i < pairs * 2; i++) {
+            parents[i] = scored.get(selector.pick(mutator.getRandom()));
+        }
+
+        // Every chunk of children gets its own stream from this, so the
+        // result doesn't depend on which thread breeds which chunk
+        breedSeed = mutator.getRandom().nextLong();
+
+        int chunks = (capacity + BIRDS_PER_CHUNK - 1) / BIRDS_PER_CHUNK;
+        if (workers == null || capacity < MIN_BIRDS_PER_TASK * 2) {
+            breedChunks(0, chunks);
+        } else {
+            int grain = Math.max(1, chunks / (settings.threads * 4));
+            workers.invoke(new BreedTask(0, chunks, grain));
+        }
+
+        for (int i = 0; i < capacity; i++) {
+            children.add(arena.getNext(i));
+        }
+
+        // Don't hold on to the old generation
+        Arrays.fill(elites, null);
+        Arrays.fill(parents, null);
+    }
+
+    // How many birds at the front of the last bred generation are elites
+    public int getEliteCount() {
+        return eliteCount;
+    }
+
+    // Works out every scored bird's fitness and gets the selector ready
+    // to pick from them, all in one pass over the birds
+    private void prepareSelection(List<Bird> scored) {
+        int count = scored.size();
+        if (fitness.length < count) {
+            fitness = new double[count];
+        }
+
+        for (int i = 0; i < count; i++) {
+            Bird b = scored.get(i);
+            // Make fitness score exponentially better
+            double f = b.getScore() * b.getScore();
+            b.setFitness(f);
+            fitness[i] = f;
+        }
+
+        selector.prepare(fitness, count);
+    }
+
+    // Puts the highest scoring birds at the front of elites, best first
+    private int pickElites(List<Bird> scored, int count) {
+        if (elites.length < count) {
+            elites = new Bird[count];
+        }
+
+        int found = 0;
+        for (int i = 0; i < scored.size(); i++) {
+            Bird b = scored.get(i);
+            if (found == count && (count == 0 || b.getScore() <= elites[count - 1].getScore())) {
+                continue;
+            }
+
+            int j = found < count ? found++ : count - 1;
+            while (j > 0 && elites[j - 1].getScore() < b.getScore()) {
+                elites[j] = elites[j - 1];
+                j--;
+            }
+            elites[j] = b;
+        }
+        return found;
+    }
+
+    // Fills the children in chunks from (inclusive) to to (exclusive)
+    private void breedChunks(int from, int to) {
+        int capacity = arena.getCapacity();
+
+        for (int chunk = from; chunk < to; chunk++) {
+            Mutator chunkMutator = Mutator.forStream(breedSeed, chunk);
+
+            int end = Math.min(capacity, (chunk + 1) * BIRDS_PER_CHUNK);
+            for (int i = chunk * BIRDS_PER_CHUNK; i < end; i++) {
+                if (i < eliteCount) {
+                    arena.copy(i, elites[i]);
+                } else {
+                    int pair = (i - eliteCount) % pairs;
+                    arena.breed(i, parents[pair * 2], parents[pair * 2 + 1], settings.crossover, chunkMutator);
+                }
+            }
+        }
+    }
+
+    private class BreedTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int from, to, grain;
+
+        BreedTask(int from, int to, int grain) {
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= grain) {
+                breedChunks(from, to);
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new BreedTask(from, mid, grain), new BreedTask(mid, to, grain));
+            }
+        }
+    }
+}
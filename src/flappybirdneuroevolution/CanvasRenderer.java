@@ -0,0 +1,118 @@
+package flappybirdneuroevolution;
+
+import java.util.Arrays;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+
+/**
+ *
+ * @author Preston Tang
+ *
+ * Draws a snapshot of the game onto a single Canvas, one pass per frame,
+ * instead of keeping a scene graph node for every bird and pipe.
+ *
+ * With a big population the birds are drawn as a heatmap instead. They
+ * all share the same x, so it's a single column where each pixel row is
+ * colored by how many birds cover it
+ *
+ */
+public class CanvasRenderer {
+
+    // Above this many birds, drawing them one by one isn't worth it
+    public static final int DEFAULT_HEATMAP_THRESHOLD = 2000;
+
+    private static final Color PIPE_COLOR = Color.rgb(30, 150, 30);
+    private static final Color BIRD_COLOR = Color.rgb(0, 0, 0, 0.15);
+
+    // Cold (few birds) to hot (most birds), picked once up front
+    private static final Color[] HEAT = new Color[256];
+
+    static {
+        for (int i = 0; i < HEAT.length; i++) {
+            double t = i / (double) (HEAT.length - 1);
+            HEAT[i] = Color.hsb(240 - 240 * t, 0.9, 0.9, 0.25 + 0.75 * t);
+        }
+    }
+
+    private final Canvas canvas;
+    private final GraphicsContext g;
+    private final double gameHeight;
+
+    private int heatmapThreshold = DEFAULT_HEATMAP_THRESHOLD;
+
+    // How many birds cover each pixel row of the game
+    private final int[] rows;
+
+    public CanvasRenderer(double gameWidth, double gameHeight) {
+        this.gameHeight = gameHeight;
+
+        canvas = new Canvas(gameWidth, gameHeight);
+        g = canvas.getGraphicsContext2D();
+        rows = new int[(int) Math.ceil(gameHeight) + 1];
+    }
+
+    public Canvas getCanvas() {
+        return canvas;
+    }
+
+    public void draw(Snapshot snapshot) {
+        g.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+
+        // Pipes
+        g.setFill(PIPE_COLOR);
+        for (int i = 0; i < snapshot.pipeCount; i++) {
+            double x = snapshot.pipeX[i];
+            double width = snapshot.pipeWidth[i];
+            g.fillRect(x, 0, width, snapshot.pipeTop[i]);
+            g.fillRect(x, snapshot.pipeBottom[i], width, gameHeight - snapshot.pipeBottom[i]);
+        }
+
+        // Birds
+        if (snapshot.shownBirds > heatmapThreshold) {
+            drawHeatmap(snapshot);
+        } else {
+            g.setFill(BIRD_COLOR);
+            for (int i = 0; i < snapshot.shownBirds; i++) {
+                g.fillRect(snapshot.birdX, snapshot.birdY[i], snapshot.birdSize, snapshot.birdSize);
+            }
+        }
+    }
+
+    private void drawHeatmap(Snapshot snapshot) {
+        int size = (int) Math.round(snapshot.birdSize);
+
+        // Every bird adds one to the rows it covers, done as a difference
+        // array so each bird is two writes no matter how tall it is
+        Arrays.fill(rows, 0);
+        for (int i = 0; i < snapshot.shownBirds; i++) {
+            int top = Math.max(0, Math.min(rows.length - 1, (int) snapshot.birdY[i]));
+            int bottom = Math.max(0, Math.min(rows.length - 1, top + size));
+            rows[top]++;
+            rows[bottom]--;
+        }
+
+        int max = 0;
+        int count = 0;
+        for (int r = 0; r < rows.length; r++) {
+            count += rows[r];
+            rows[r] = count;
+            max = Math.max(max, count);
+        }
+
+        for (int r = 0; r < rows.length; r++) {
+            if (rows[r] > 0) {
+                g.setFill(HEAT[(int) ((long) rows[r] * (HEAT.length - 1) / max)]);
+                g.fillRect(snapshot.birdX, r, snapshot.birdSize, 1);
+            }
+        }
+    }
+
+    public int getHeatmapThreshold() {
+        return heatmapThreshold;
+    }
+
+    public void setHeatmapThreshold(int heatmapThreshold) {
+        this.heatmapThreshold = heatmapThreshold;
+    }
+}
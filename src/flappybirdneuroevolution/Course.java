@@ -0,0 +1,62 @@
+package flappybirdneuroevolution;
+
+/**
+ *
+ * @author Preston Tang
+ *
+ * A seeded sequence of pipes. The gap and opening of the nth pipe only
+ * depend on the seed and n, so the same course can be replayed exactly,
+ * and any pipe can be worked out without generating the ones before it
+ *
+ */
+public class Course {
+
+    // Odd constant from SplitMix64, spreads consecutive numbers apart
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private final long seed;
+
+    public Course(long seed) {
+        this.seed = seed;
+    }
+
+    // The course for the given run (generation, best bird attempt...) of a seed
+    public static Course forRun(long seed, long run) {
+        return new Course(derive(seed, run));
+    }
+
+    // The nth of many independent seeds worked out from one seed
+    public static long derive(long seed, long n) {
+        return mix(seed + n * GOLDEN_GAMMA);
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    // Size of the opening of the given pipe
+    public double gap(int pipe, double gapMin, double gapMax) {
+        return gapMin == gapMax ? gapMin : gapMin + random(pipe, 0) * (gapMax - gapMin);
+    }
+
+    // Where the opening of the given pipe starts, while taking account
+    // of the size of the opening
+    public double opening(int pipe, double gap, double gameHeight) {
+        double min = gameHeight * 0.1;
+        double max = gameHeight * 0.9 - gap;
+        return min + random(pipe, 1) * (max - min);
+    }
+
+    // A number between 0 (inclusive) and 1 (exclusive) for one value of one pipe
+    private double random(int pipe, int value) {
+        long z = mix(seed + (pipe * 2L + value + 1) * GOLDEN_GAMMA);
+        return (z >>> 11) * 0x1.0p-53;
+    }
+
+    // The SplitMix64 finalizer, turns any long into a well-scrambled one
+    public static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,70 @@
+package flappybirdneuroevolution;
+
+import java.util.SplittableRandom;
+
+/**
+ *
+ * @author Preston Tang
+ *
+ * Ways of mixing two parents' genomes into a child, working straight on
+ * the flat arrays from NeuralNetwork.genome. Each genome is a run of
+ * length genes starting at its own offset, since genomes can live side by
+ * side in one big array
+ *
+ */
+public enum Crossover {
+
+    // Every gene comes from either parent with even odds, one random
+    // long decides 64 genes at a time
+    UNIFORM {
+        @Override
+        public void cross(double[] a, int aFrom, double[] b, int bFrom, double[] child, int childFrom,
+                int length, SplittableRandom random) {
+            for (int block = 0; block < length; block += 64) {
+                long mask = random.nextLong();
+                int end = Math.min(length, block + 64);
+                for (int i = block; i < end; i++) {
+                    // All ones when the bit is set, picks between the
+                    // parents without a branch the CPU would mispredict
+                    long pick = -(mask & 1);
+                    child[childFrom + i] = Double.longBitsToDouble((Double.doubleToRawLongBits(a[aFrom + i]) & pick)
+                            | (Double.doubleToRawLongBits(b[bFrom + i]) & ~pick));
+                    mask >>>= 1;
+                }
+            }
+        }
+    },
+    // Everything before a random cut comes from the first parent and the
+    // rest from the second
+    SINGLE_POINT {
+        @Override
+        public void cross(double[] a, int aFrom, double[] b, int bFrom, double[] child, int childFrom,
+                int length, SplittableRandom random) {
+            int cut = random.nextInt(length + 1);
+            System.arraycopy(a, aFrom, child, childFrom, cut);
+            System.arraycopy(b, bFrom + cut, child, childFrom + cut, length - cut);
+        }
+    },
+    // Every gene is the same random mix of the two parents' genes
+    BLEND {
+        @Override
+        public void cross(double[] a, int aFrom, double[] b, int bFrom, double[] child, int childFrom,
+                int length, SplittableRandom random) {
+            double t = random.nextDouble();
+            for (int i = 0; i < length; i++) {
+                child[childFrom + i] = a[aFrom + i] + (b[bFrom + i] - a[aFrom + i]) * t;
+            }
+        }
+    };
+
+    /**
+     * Writes length genes of the child. The child can be the same genome
+     * as either parent.
+     */
+    public abstract void cross(double[] a, int aFrom, double[] b, int bFrom, double[] child, int childFrom,
+            int length, SplittableRandom random);
+
+    public void cross(double[] a, double[] b, double[] child, SplittableRandom random) {
+        cross(a, 0, b, 0, child, 0, child.length, random);
+    }
+}
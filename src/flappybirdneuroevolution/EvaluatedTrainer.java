@@ -0,0 +1,168 @@
+package flappybirdneuroevolution;
+
+import flappybirdneuroevolution.NeuralNetwork.ActivationFunction;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ *
+ * @author Preston Tang
+ *
+ * Evolves birds whose scores come from an Evaluation instead of a game
+ * running here. Every generation's brains already sit one after the
+ * other in the GenomeArena, so they're handed over as they are, played
+ * on that generation's course, and bred from with Breeder.
+ *
+ * With an EvaluationCoordinator this spreads a huge population over
+ * workers on other machines, while this machine only breeds.
+ * Usage: EvaluatedTrainer [generations] [file to save the best bird to]
+ *     [workers, like host:port,host:port, or empty to play here] [seed]
+ *     [tick budget] [population size]
+ *
+ */
+public class EvaluatedTrainer {
+
+    private final Settings settings;
+    private final Evaluation evaluation;
+
+    private final GenomeArena arena;
+    private final Breeder breeder;
+    private final Mutator mutator;
+
+    // The playing generation and the one being bred, swapped every time
+    private List<Bird> birds = new ArrayList<>();
+    private List<Bird> children = new ArrayList<>();
+    private final double[] scores;
+
+    private int generation = 1;
+    private int highscore;
+    private Bird bestBird;
+
+    private final GenerationStats stats = new GenerationStats();
+
+    /**
+     * @param workers Breeds the children, null for the calling thread
+     */
+    public EvaluatedTrainer(Settings settings, Evaluation evaluation, ForkJoinPool workers) {
+        this.settings = settings;
+        this.evaluation = evaluation;
+
+        ActivationFunction activation = Activations.function(settings.activation);
+        mutator = new Mutator(settings.seed).split();
+        arena = new GenomeArena(settings.populationSize, 4, 1, 3, 2, activation, settings.mutationRate,
+                settings.jumpStrength, settings.gameWidth, settings.gameHeight);
+        breeder = new Breeder(settings, arena, mutator, workers);
+        scores = new double[settings.populationSize];
+
+        for (int i = 0; i < arena.getCapacity(); i++) {
+            birds.add(arena.randomize(i, mutator));
+        }
+        arena.swap();
+    }
+
+    /**
+     * Scores the playing generation and breeds the next one.
+     *
+     * @return What happened, the same object every time
+     */
+    public GenerationStats runGeneration() throws IOException {
+        long start = System.nanoTime();
+
+        // The same courses a Simulation with this seed would play
+        long courseSeed = Course.forRun(settings.seed, generation - 1).getSeed();
+        evaluation.evaluate(arena.getGenomes(), birds.size(), courseSeed, scores);
+
+        Bird best = null;
+        int survivors = 0;
+        for (int i = 0; i < birds.size(); i++) {
+            Bird b = birds.get(i);
+            b.setScore(scores[i]);
+            if (best == null || scores[i] > best.getScore()) {
+                best = b;
+            }
+            if (scores[i] >= settings.tickBudget) {
+                survivors++;
+            }
+        }
+
+        int score = (int) best.getScore();
+        if (bestBird == null || score > bestBird.getScore()) {
+            // The arena will reuse its slot two generations from now
+            bestBird = best.copy();
+        }
+        highscore = Math.max(highscore, score);
+
+        children.clear();
+        breeder.breed(birds, children);
+        arena.swap();
+
+        List<Bird> swap = birds;
+        birds = children;
+        children = swap;
+
+        stats.generation = generation++;
+        stats.score = score;
+        stats.highscore = highscore;
+        stats.ticks = score;
+        stats.nanos = System.nanoTime() - start;
+        stats.survivors = survivors;
+        stats.timedOut = survivors > 0;
+        stats.solved = settings.solvedScore > 0 && score >= settings.solvedScore;
+        return stats;
+    }
+
+    public Bird getBestBird() {
+        return bestBird;
+    }
+
+    public int getGeneration() {
+        return generation;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int generations = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        File output = args.length > 1 && !args[1].isEmpty() ? new File(args[1]) : null;
+        String workerList = args.length > 2 ? args[2] : "";
+
+        Settings settings = new Settings();
+        settings.threads = Runtime.getRuntime().availableProcessors();
+        if (args.length > 3) {
+            settings.seed = Long.parseLong(args[3]);
+        }
+        settings.tickBudget = args.length > 4 ? Integer.parseInt(args[4]) : 10000;
+        if (args.length > 5) {
+            settings.populationSize = Integer.parseInt(args[5]);
+        }
+
+        ForkJoinPool workers = new ForkJoinPool(settings.threads);
+        List<InetSocketAddress> addresses = EvaluationCoordinator.parseAddresses(workerList);
+        EvaluationCoordinator coordinator = addresses.isEmpty() ? null
+                : new EvaluationCoordinator(settings, addresses);
+
+        try {
+            Evaluation evaluation = coordinator != null ? coordinator : new Evaluator(settings, workers);
+            EvaluatedTrainer trainer = new EvaluatedTrainer(settings, evaluation, workers);
+
+            for (int i = 0; i < generations; i++) {
+                GenerationStats stats = trainer.runGeneration();
+                System.out.println("Generation " + stats.generation + " ended with score " + stats.score
+                        + " (highest " + stats.highscore + ") in " + Math.round(stats.getMillis()) + " ms, "
+                        + stats.survivors + " birds reached the tick budget");
+            }
+
+            if (output != null && trainer.getBestBird() != null) {
+                trainer.getBestBird().getBrain().writeTo(output, settings.storagePrecision);
+                System.out.println("Saved the best bird to " + output);
+            }
+        } finally {
+            if (coordinator != null) {
+                coordinator.close();
+            }
+            workers.shutdown();
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package flappybirdneuroevolution;
+
+import java.io.IOException;
+
+/**
+ *
+ * @author Preston Tang
+ *
+ * Something that can score brains without a Simulation around them, by
+ * letting each one play a course until it dies or runs out of ticks.
+ * Evaluator does it on this machine, EvaluationCoordinator hands it out
+ * to EvaluationWorkers on others
+ *
+ */
+public interface Evaluation {
+
+    /**
+     * Plays every genome on the same course and gives back how many ticks
+     * each one lasted. The birds don't affect each other, so the scores
+     * only depend on the genomes and the course.
+     *
+     * @param genomes The genomes one after the other, each as long as
+     * {@link NeuralNetwork#genomeSize(int, int, int, int)} of the birds'
+     * brains
+     * @param count How many genomes there are
+     * @param courseSeed The seed of the Course to play
+     * @param scores Gets each genome's score, at most the tick budget
+     */
+    void evaluate(double[] genomes, int count, long courseSeed, double[] scores) throws IOException;
+}
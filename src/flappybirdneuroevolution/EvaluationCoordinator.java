@@ -0,0 +1,223 @@
+package flappybirdneuroevolution;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ *
+ * @author Preston Tang
+ *
+ * Scores genomes by handing them out to EvaluationWorkers over TCP. The
+ * genomes are cut into batches of settings.evaluationBatch, and every
+ * worker has its own thread that takes the next batch whenever it has
+ * room, so faster workers end up with more of them.
+ *
+ * Each worker has up to IN_FLIGHT batches sent but not answered, so it
+ * always has the next batch waiting while it plays one and the network
+ * round-trip is hidden. If a worker fails, the whole evaluation fails
+ *
+ */
+public class EvaluationCoordinator implements Evaluation, Closeable {
+
+    // Batches sent to one worker before waiting for its oldest answer.
+    // The answers waiting to be read stay far below a socket's buffer,
+    // so neither side can block the other while both are writing
+    private static final int IN_FLIGHT = 4;
+
+    private final Settings settings;
+    private final int genomeSize;
+    private final Connection[] connections;
+    private final ExecutorService threads;
+
+    /**
+     * Connects to every worker and tells them what game to play.
+     *
+     * @param workers Where the workers are listening
+     */
+    public EvaluationCoordinator(Settings settings, List<InetSocketAddress> workers) throws IOException {
+        if (workers.isEmpty()) {
+            throw new IllegalArgumentException("There has to be at least one worker");
+        }
+        this.settings = settings;
+        genomeSize = NeuralNetwork.genomeSize(4, 1, 3, 2);
+
+        connections = new Connection[workers.size()];
+        try {
+            for (int i = 0; i < connections.length; i++) {
+                connections[i] = new Connection(workers.get(i));
+            }
+        } catch (IOException ex) {
+            close();
+            throw ex;
+        }
+        threads = Executors.newFixedThreadPool(connections.length);
+    }
+
+    /**
+     * Parses worker addresses like "localhost:7077,10.0.0.2:7077", a
+     * missing port is EvaluationWorker.DEFAULT_PORT.
+     */
+    public static List<InetSocketAddress> parseAddresses(String list) {
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        for (String address : list.split(",")) {
+            address = address.trim();
+            if (address.isEmpty()) {
+                continue;
+            }
+
+            int colon = address.lastIndexOf(':');
+            if (colon < 0) {
+                addresses.add(new InetSocketAddress(address, EvaluationWorker.DEFAULT_PORT));
+            } else {
+                addresses.add(new InetSocketAddress(address.substring(0, colon),
+                        Integer.parseInt(address.substring(colon + 1))));
+            }
+        }
+        return addresses;
+    }
+
+    @Override
+    public void evaluate(double[] genomes, int count, long courseSeed, double[] scores) throws IOException {
+        int batchSize = Math.max(1, settings.evaluationBatch);
+        int batches = (count + batchSize - 1) / batchSize;
+        AtomicInteger nextBatch = new AtomicInteger();
+
+        List<Future<?>> running = new ArrayList<>();
+        for (Connection c : connections) {
+            running.add(threads.submit(() -> {
+                c.evaluate(genomes, count, courseSeed, scores, batchSize, batches, nextBatch);
+                return null;
+            }));
+        }
+
+        try {
+            for (Future<?> f : running) {
+                f.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the workers", ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+        }
+    }
+
+    // Tells every worker it's done and disconnects
+    @Override
+    public void close() {
+        for (Connection c : connections) {
+            if (c != null) {
+                c.close();
+            }
+        }
+        if (threads != null) {
+            threads.shutdown();
+        }
+    }
+
+    // One worker, only ever used by one thread at a time
+    private final class Connection {
+
+        private final Socket socket;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+
+        // The batches sent and not answered yet, oldest first
+        private final int[] sent = new int[IN_FLIGHT];
+
+        Connection(InetSocketAddress address) throws IOException {
+            socket = new Socket();
+            socket.setTcpNoDelay(true);
+            socket.connect(address);
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+
+            out.writeInt(EvaluationWorker.VERSION);
+            EvaluationWorker.writeSettings(out, settings);
+            out.flush();
+        }
+
+        void evaluate(double[] genomes, int count, long courseSeed, double[] scores, int batchSize, int batches,
+                AtomicInteger nextBatch) throws IOException {
+            int first = 0, waiting = 0;
+            boolean more = true;
+
+            while (true) {
+                // Top the worker up, then wait for its oldest answer
+                while (more && waiting < IN_FLIGHT) {
+                    int batch = nextBatch.getAndIncrement();
+                    if (batch >= batches) {
+                        more = false;
+                        break;
+                    }
+                    send(genomes, count, courseSeed, batch, batchSize);
+                    sent[(first + waiting++) % IN_FLIGHT] = batch;
+                }
+                out.flush();
+
+                if (waiting == 0) {
+                    return;
+                }
+                receive(scores, count, sent[first], batchSize);
+                first = (first + 1) % IN_FLIGHT;
+                waiting--;
+            }
+        }
+
+        private void send(double[] genomes, int count, long courseSeed, int batch, int batchSize) throws IOException {
+            int from = batch * batchSize;
+            int size = Math.min(batchSize, count - from);
+
+            out.writeByte(EvaluationWorker.EVALUATE);
+            out.writeLong(courseSeed);
+            out.writeInt(size);
+            Precision precision = settings.transferPrecision;
+            int end = (from + size) * genomeSize;
+            for (int i = from * genomeSize; i < end; i++) {
+                precision.write(out, genomes[i]);
+            }
+        }
+
+        private void receive(double[] scores, int count, int batch, int batchSize) throws IOException {
+            int from = batch * batchSize;
+            int size = in.readInt();
+            if (size != Math.min(batchSize, count - from)) {
+                throw new IOException("Expected the scores of batch " + batch + ", got " + size + " scores");
+            }
+            for (int i = 0; i < size; i++) {
+                scores[from + i] = in.readDouble();
+            }
+        }
+
+        void close() {
+            try {
+                out.writeByte(EvaluationWorker.CLOSE);
+                out.flush();
+            } catch (IOException ex) {
+                // It's going away anyway
+            }
+            try {
+                socket.close();
+            } catch (IOException ex) {
+                // Nothing left to do with it
+            }
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package flappybirdneuroevolution;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ *
+ * @author Preston Tang
+ *
+ * Scores genomes for an EvaluationCoordinator on another JVM, usually on
+ * another machine. Every connection starts with the settings of the game
+ * to play, after which the coordinator sends batches of genomes and gets
+ * their scores back in the same order.
+ *
+ * The protocol, all big-endian as DataOutputStream writes it:
+ * Coordinator: int VERSION, the settings (see writeSettings), then any
+ * number of batches of byte EVALUATE, long course seed, int count, and
+ * count genomes in the transfer precision, ended by byte CLOSE.
+ * Worker: per batch, int count and count double scores.
+ *
+ * Usage: EvaluationWorker [port] [threads]
+ *
+ */
+public class EvaluationWorker {
+
+    public static final int DEFAULT_PORT = 7077;
+
+    static final int VERSION = 2;
+    static final byte CLOSE = 0;
+    static final byte EVALUATE = 1;
+
+    private final ForkJoinPool workers;
+
+    public EvaluationWorker(int threads) {
+        workers = threads > 1 ? new ForkJoinPool(threads) : null;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+        EvaluationWorker worker = new EvaluationWorker(threads);
+        try (ServerSocket server = new ServerSocket(port)) {
+            System.out.println("Waiting for a coordinator on port " + server.getLocalPort());
+            worker.serve(server);
+        }
+    }
+
+    // Serves every coordinator that connects, each on its own thread,
+    // until the server socket is closed
+    public void serve(ServerSocket server) throws IOException {
+        while (!server.isClosed()) {
+            Socket socket;
+            try {
+                socket = server.accept();
+            } catch (IOException ex) {
+                if (server.isClosed()) {
+                    return;
+                }
+                throw ex;
+            }
+
+            Thread thread = new Thread(() -> {
+                try {
+                    serve(socket);
+                } catch (IOException ex) {
+                    System.err.println("Lost the coordinator at " + socket.getRemoteSocketAddress() + ": " + ex);
+                }
+            }, "Evaluation " + socket.getRemoteSocketAddress());
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    // Answers one coordinator until it says it's done
+    public void serve(Socket socket) throws IOException {
+        try (Socket s = socket) {
+            s.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream(), 1 << 16));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream(), 1 << 16));
+
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("The coordinator speaks version " + version + ", not " + VERSION);
+            }
+            Settings settings = readSettings(in);
+            Evaluator evaluator = new Evaluator(settings, workers);
+            int genomeSize = NeuralNetwork.genomeSize(4, 1, 3, 2);
+
+            double[] genomes = new double[0];
+            double[] scores = new double[0];
+
+            while (in.readByte() == EVALUATE) {
+                long courseSeed = in.readLong();
+                int count = in.readInt();
+                if (genomes.length < count * genomeSize) {
+                    genomes = new double[count * genomeSize];
+                    scores = new double[count];
+                }
+                for (int i = 0; i < count * genomeSize; i++) {
+                    genomes[i] = settings.transferPrecision.read(in);
+                }
+
+                evaluator.evaluate(genomes, count, courseSeed, scores);
+
+                out.writeInt(count);
+                for (int i = 0; i < count; i++) {
+                    out.writeDouble(scores[i]);
+                }
+                out.flush();
+            }
+        }
+    }
+
+    // Everything a worker needs to play the same game as the coordinator
+    static void writeSettings(DataOutputStream out, Settings settings) throws IOException {
+        out.writeDouble(settings.gameWidth);
+        out.writeDouble(settings.gameHeight);
+        out.writeDouble(settings.pipeWidth);
+        out.writeDouble(settings.pipeGapMin);
+        out.writeDouble(settings.pipeGapMax);
+        out.writeDouble(settings.gravity);
+        out.writeDouble(settings.jumpStrength);
+        out.writeDouble(settings.pipeUpdatePercentage);
+        out.writeInt(settings.tickBudget);
+        out.writeUTF(settings.activation);
+        out.writeUTF(settings.precision.name());
+        out.writeUTF(settings.transferPrecision.name());
+        out.writeInt(settings.courses);
+        out.writeUTF(settings.courseAggregation.name());
+        out.writeDouble(settings.courseQuantile);
+    }
+
+    static Settings readSettings(DataInputStream in) throws IOException {
+        Settings settings = new Settings();
+        settings.gameWidth = in.readDouble();
+        settings.gameHeight = in.readDouble();
+        settings.pipeWidth = in.readDouble();
+        settings.pipeGapMin = in.readDouble();
+        settings.pipeGapMax = in.readDouble();
+        settings.gravity = in.readDouble();
+        settings.jumpStrength = in.readDouble();
+        settings.pipeUpdatePercentage = in.readDouble();
+        settings.tickBudget = in.readInt();
+        settings.activation = in.readUTF();
+        settings.precision = Precision.valueOf(in.readUTF());
+        settings.transferPrecision = Precision.valueOf(in.readUTF());
+        settings.courses = in.readInt();
+        settings.courseAggregation = Aggregation.valueOf(in.readUTF());
+        settings.courseQuantile = in.readDouble();
+        return settings;
+    }
+}
@@ -0,0 +1,311 @@
+package flappybirdneuroevolution;
+
+import flappybirdneuroevolution.NeuralNetwork.ActivationFunction;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ *
+ * @author Preston Tang
+ *
+ * Scores genomes on this machine by playing them the same way Simulation
+ * does, minus everything about generations. The genomes are split into
+ * games of up to BIRDS_PER_GAME birds, which can be played on different
+ * threads since every game of a course has the same pipes.
+ *
+ * With settings.courses above 1 every genome also plays more courses
+ * worked out from the given one, and its score is settings'
+ * courseAggregation of them. A game steps all its courses side by side
+ * in one loop, every genome has a slot per course in the same population,
+ * so one batch of thinking covers every course. With threads every
+ * course of every game is a task of its own instead, so with enough
+ * threads scoring on several courses takes about as long as on one.
+ *
+ * Every thread keeps its own game around, so scoring doesn't allocate
+ * once each thread has played one. An Evaluator should only be used by
+ * one caller at a time
+ *
+ */
+public class Evaluator implements Evaluation {
+
+    private static final int BIRDS_PER_GAME = 4096;
+
+    // The same limit as Simulation, never more than 6 pipes are on screen
+    private static final int MAX_PIPES = 8;
+
+    private final Settings settings;
+    private final ActivationFunction activation;
+    private final int genomeSize;
+
+    // null plays every game on the calling thread
+    private final ForkJoinPool workers;
+
+    private final ThreadLocal<Game> games = ThreadLocal.withInitial(() -> new Game());
+
+    // Every course's scores one after the other, and one genome's scores
+    // gathered up to be combined
+    private double[] courseScores = new double[0];
+    private final double[] genomeScores;
+
+    /**
+     * @param settings The game to play, its tick budget can't be 0 since
+     * a good bird would play forever
+     * @param workers Where to play the games, null for the calling thread
+     */
+    public Evaluator(Settings settings, ForkJoinPool workers) {
+        if (settings.tickBudget <= 0) {
+            throw new IllegalArgumentException("Evaluating needs a tick budget");
+        }
+        this.settings = settings;
+        this.workers = workers;
+        activation = Activations.function(settings.activation);
+        genomeSize = NeuralNetwork.genomeSize(4, 1, 3, 2);
+        genomeScores = new double[Math.max(1, settings.courses)];
+    }
+
+    // The seed of the given course of an evaluation, the first one is
+    // always the course it was asked for
+    private static long courseSeed(long courseSeed, int course) {
+        return course == 0 ? courseSeed : Course.derive(courseSeed, course);
+    }
+
+    @Override
+    public void evaluate(double[] genomes, int count, long courseSeed, double[] scores) {
+        evaluate(genomes, count, courseSeed, scores, 0);
+    }
+
+    /**
+     * Like evaluate(), for genomes that have already played the given
+     * course with this tick budget, so only the other courses are played.
+     *
+     * @param scores Holds each genome's score on the given course, and
+     * gets its combined score
+     */
+    public void evaluateOthers(double[] genomes, int count, long courseSeed, double[] scores) {
+        evaluate(genomes, count, courseSeed, scores, 1);
+    }
+
+    // Plays the courses from firstCourse on, the scores of the ones before
+    // it are already in scores
+    private void evaluate(double[] genomes, int count, long courseSeed, double[] scores, int firstCourse) {
+        int courses = genomeScores.length;
+        double[] out = scores;
+        if (courses > 1) {
+            if (courseScores.length < courses * count) {
+                courseScores = new double[courses * count];
+            }
+            out = courseScores;
+            if (firstCourse > 0) {
+                System.arraycopy(scores, 0, courseScores, 0, count);
+            }
+        }
+
+        // Task t plays game t % gameCount on course firstCourse + t / gameCount
+        int gameCount = (count + BIRDS_PER_GAME - 1) / BIRDS_PER_GAME;
+        int tasks = gameCount * (courses - firstCourse);
+        if (workers == null || tasks < 2) {
+            // Every game plays all its courses at once instead
+            Game game = games.get();
+            for (int g = 0; g < gameCount; g++) {
+                int first = g * BIRDS_PER_GAME;
+                game.play(genomes, first, Math.min(BIRDS_PER_GAME, count - first), courseSeed, firstCourse,
+                        courses, out, count);
+            }
+        } else {
+            workers.invoke(new PlayTask(genomes, count, courseSeed, out, gameCount, firstCourse, 0, tasks));
+        }
+
+        if (courses > 1) {
+            for (int i = 0; i < count; i++) {
+                for (int c = 0; c < courses; c++) {
+                    genomeScores[c] = courseScores[c * count + i];
+                }
+                scores[i] = settings.courseAggregation.combine(genomeScores, courses, settings.courseQuantile);
+            }
+        }
+    }
+
+    // Plays tasks from (inclusive) to to (exclusive), course c's scores go
+    // to out[c * count...]
+    private void play(double[] genomes, int count, long courseSeed, double[] out, int gameCount,
+            int firstCourse, int from, int to) {
+        Game game = games.get();
+        for (int t = from; t < to; t++) {
+            int course = firstCourse + t / gameCount;
+            int first = (t % gameCount) * BIRDS_PER_GAME;
+            game.play(genomes, first, Math.min(BIRDS_PER_GAME, count - first), courseSeed, course, course + 1,
+                    out, count);
+        }
+    }
+
+    private class PlayTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final double[] genomes, out;
+        private final int count, gameCount, firstCourse;
+        private final long courseSeed;
+        private final int from, to;
+
+        PlayTask(double[] genomes, int count, long courseSeed, double[] out, int gameCount, int firstCourse,
+                int from, int to) {
+            this.genomes = genomes;
+            this.count = count;
+            this.courseSeed = courseSeed;
+            this.out = out;
+            this.gameCount = gameCount;
+            this.firstCourse = firstCourse;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= 1) {
+                play(genomes, count, courseSeed, out, gameCount, firstCourse, from, to);
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new PlayTask(genomes, count, courseSeed, out, gameCount, firstCourse, from, mid),
+                        new PlayTask(genomes, count, courseSeed, out, gameCount, firstCourse, mid, to));
+            }
+        }
+    }
+
+    // One game's worth of birds on every course, only used by one thread
+    private final class Game {
+
+        // birds[i] thinks with brains[i * genomeSize...]
+        private final double[] brains = new double[BIRDS_PER_GAME * genomeSize];
+        private final Bird[] birds = new Bird[BIRDS_PER_GAME];
+
+        // Every bird of every course, tagged with its course times
+        // BIRDS_PER_GAME plus its bird
+        private final Population population;
+        private final ArrayList<Bird> done = new ArrayList<>();
+
+        // Each course's pipes, the ones being played are stepped together
+        private final PipeRing[] pipes;
+        private final PipeContext[] contexts;
+        private final boolean[] pipeOverhead;
+        private final Course[] courses;
+        private final int[] nextPipes;
+
+        Game() {
+            for (int i = 0; i < BIRDS_PER_GAME; i++) {
+                NeuralNetwork brain = new NeuralNetwork(4, 1, 3, 2, brains, i * genomeSize);
+                brain.setActivationFunction(activation);
+                birds[i] = Bird.withBrain(brain, settings.mutationRate, settings.jumpStrength,
+                        settings.gameWidth, settings.gameHeight);
+            }
+
+            int courseCount = genomeScores.length;
+            population = new Population(BIRDS_PER_GAME * courseCount, settings.gameWidth * 0.05, Bird.SIZE,
+                    settings.jumpStrength, activation.kernel, settings.precision);
+
+            pipes = new PipeRing[courseCount];
+            contexts = new PipeContext[courseCount];
+            for (int c = 0; c < courseCount; c++) {
+                pipes[c] = new PipeRing(MAX_PIPES);
+                contexts[c] = new PipeContext();
+            }
+            pipeOverhead = new boolean[courseCount];
+            courses = new Course[courseCount];
+            nextPipes = new int[courseCount];
+        }
+
+        // Plays count genomes starting from genome first on the courses
+        // from (inclusive) to to (exclusive) of an evaluation. Genome
+        // first + i's score on course c goes to scores[c * stride + first + i]
+        void play(double[] genomes, int first, int count, long courseSeed, int from, int to, double[] scores,
+                int stride) {
+            System.arraycopy(genomes, first * genomeSize, brains, 0, count * genomeSize);
+            int played = to - from;
+            for (int c = 0; c < played; c++) {
+                startCourse(c, courseSeed(courseSeed, from + c));
+            }
+
+            // A bird gets a slot on every course, the slots only take its
+            // brain and where it starts from it
+            for (int i = 0; i < count; i++) {
+                birds[i].reset();
+                for (int c = 0; c < played; c++) {
+                    population.add(birds[i], 0, c * BIRDS_PER_GAME + i);
+                }
+            }
+
+            double x = population.getX();
+            double size = population.getBirdSize();
+            for (int tick = 0; tick < settings.tickBudget && !population.isEmpty(); tick++) {
+                for (int c = 0; c < played; c++) {
+                    movePipes(c);
+                    contexts[c].update(pipes[c], x, settings.gameHeight);
+                    pipeOverhead[c] = contexts[c].overlaps(x, size);
+                }
+
+                int alive = population.size();
+                population.step(0, alive, settings.gravity);
+
+                for (int i = 0; i < alive; i++) {
+                    int tag = population.getTag(i);
+                    int c = tag / BIRDS_PER_GAME;
+                    PipeContext context = contexts[c];
+
+                    double y = population.getY(i);
+                    if (y < 0 || y + size > settings.gameHeight || (pipeOverhead[c] && context.hitsPipe(y, size))) {
+                        population.kill(i);
+                        scores[(from + c) * stride + first + tag % BIRDS_PER_GAME] = population.getScore(i);
+                    }
+                    population.writeInputs(i, context);
+                }
+                // Every course thinks in the same batch
+                population.think(0, alive);
+
+                population.removeDead(done);
+                done.clear();
+            }
+
+            // The birds that made it to the tick budget
+            for (int i = 0; i < population.size(); i++) {
+                int tag = population.getTag(i);
+                int c = tag / BIRDS_PER_GAME;
+                scores[(from + c) * stride + first + tag % BIRDS_PER_GAME] = population.getScore(i);
+            }
+            population.clear();
+        }
+
+        private void startCourse(int c, long seed) {
+            pipes[c].clear();
+            courses[c] = new Course(seed);
+            nextPipes[c] = 0;
+            spawnPipe(c, settings.gameWidth / 2.0);
+            spawnPipe(c, settings.gameWidth - (settings.gameWidth / 4.0));
+        }
+
+        // The same pipe rules as Simulation's pipeManagement
+        private void movePipes(int c) {
+            PipeRing ring = pipes[c];
+            if (settings.gameWidth - ring.getLast().getX() > settings.gameWidth / 4) {
+                spawnPipe(c, settings.gameWidth);
+            }
+
+            while (!ring.isEmpty() && ring.getFirst().getX() + settings.pipeWidth < 0) {
+                ring.removeFirst();
+            }
+
+            for (int i = 0; i < ring.size(); i++) {
+                ring.get(i).update();
+            }
+        }
+
+        private void spawnPipe(int c, double x) {
+            Course course = courses[c];
+            double gap = course.gap(nextPipes[c], settings.pipeGapMin, settings.pipeGapMax);
+            double top = course.opening(nextPipes[c], gap, settings.gameHeight);
+            nextPipes[c]++;
+
+            pipes[c].addLast().set(x, top, gap, settings.pipeWidth,
+                    settings.gameWidth * settings.pipeUpdatePercentage);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package flappybirdneuroevolution;
+
+/**
+ *
+ * @author Preston Tang
+ *
+ * What happened in a generation, handed to Simulation's listener when the
+ * generation ends. The same object is filled in every time, so copy out
+ * anything that's needed after the call
+ *
+ */
+public class GenerationStats {
+
+    // Which generation just ended
+    public int generation;
+
+    // The best score in it, and the best score of the whole run so far
+    public int score;
+    public int highscore;
+
+    // How long it ran for, in ticks and in real time
+    public long ticks;
+    public long nanos;
+
+    // How many birds were still flying when it was cut short
+    public int survivors;
+
+    // Whether it ended because it hit the tick budget, or because a bird
+    // reached the solved score
+    public boolean timedOut;
+    public boolean solved;
+
+    public double getMillis() {
+        return nanos / 1e6;
+    }
+}
@@ -0,0 +1,120 @@
+package flappybirdneuroevolution;
+
+import flappybirdneuroevolution.NeuralNetwork.ActivationFunction;
+
+/**
+ *
+ * @author Preston Tang
+ *
+ * Every bird's brain for two generations, kept in two big arrays made
+ * once. One holds the generation that's playing (the parents), the other
+ * is where their children are bred, and the two swap roles every
+ * generation.
+ *
+ * Each slot of each array comes with a Bird made up front whose brain is
+ * a view into that slot, so a bird is really just an index and breeding a
+ * generation doesn't create anything. The catch is that a bird from
+ * two generations ago gets overwritten, so anything kept longer than that
+ * (like the best bird) has to be copied out with Bird.copy()
+ *
+ */
+public class GenomeArena {
+
+    private final int capacity;
+    private final int genomeSize;
+
+    // genomes[half][slot * genomeSize + gene]
+    private final double[][] genomes = new double[2][];
+    private final Bird[][] birds = new Bird[2][];
+
+    // Which half the playing generation is in
+    private int current;
+
+    public GenomeArena(int capacity, int inputNodes, int hiddenLayers, int hiddenNodes, int outputNodes,
+            ActivationFunction activation, double mutationRate, double jumpStrength,
+            double gameWidth, double gameHeight) {
+        this.capacity = capacity;
+        genomeSize = NeuralNetwork.genomeSize(inputNodes, hiddenLayers, hiddenNodes, outputNodes);
+
+        for (int half = 0; half < 2; half++) {
+            genomes[half] = new double[capacity * genomeSize];
+            birds[half] = new Bird[capacity];
+
+            for (int slot = 0; slot < capacity; slot++) {
+                NeuralNetwork brain = new NeuralNetwork(inputNodes, hiddenLayers, hiddenNodes, outputNodes,
+                        genomes[half], slot * genomeSize);
+                brain.setActivationFunction(activation);
+                birds[half][slot] = Bird.withBrain(brain, mutationRate, jumpStrength, gameWidth, gameHeight);
+            }
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Breeds a child into a slot of the next generation and mutates it.
+     * The parents can be any birds, as long as neither is in the next
+     * generation.
+     *
+     * @return The child, reset to the start
+     */
+    public Bird breed(int slot, Bird parent1, Bird parent2, Crossover crossover, Mutator mutator) {
+        Bird child = birds[1 - current][slot];
+        NeuralNetwork brain = child.getBrain();
+
+        parent1.getBrain().crossover(parent2.getBrain(), brain, crossover, mutator);
+        brain.mutateBiases(child.getMutationRate(), mutator);
+        brain.mutateWeights(child.getMutationRate(), mutator);
+
+        child.reset();
+        return child;
+    }
+
+    // Puts an unchanged copy of a bird's brain in a slot of the next generation
+    public Bird copy(int slot, Bird parent) {
+        Bird child = birds[1 - current][slot];
+        NeuralNetwork from = parent.getBrain();
+        NeuralNetwork to = child.getBrain();
+
+        System.arraycopy(from.genome, from.genomeOffset, to.genome, to.genomeOffset, genomeSize);
+        child.reset();
+        return child;
+    }
+
+    // The brains of the playing generation, one slot after the other
+    public double[] getGenomes() {
+        return genomes[current];
+    }
+
+    // The bird in a slot of the next generation
+    public Bird getNext(int slot) {
+        return birds[1 - current][slot];
+    }
+
+    // Puts a bird with a brand new random brain in a slot of the next generation
+    public Bird randomize(int slot, Mutator mutator) {
+        Bird child = birds[1 - current][slot];
+        child.getBrain().randomizeBoth(mutator);
+        child.reset();
+        return child;
+    }
+
+    // Makes the next generation the playing one
+    public void swap() {
+        current = 1 - current;
+    }
+
+    /**
+     * The bird itself if it's safe to keep around, otherwise a copy of
+     * it. Birds of the next generation are overwritten by the next
+     * breed, so call this on anything kept across a swap.
+     */
+    public Bird keep(Bird b) {
+        if (b != null && b.getBrain().genome == genomes[1 - current]) {
+            return b.copy();
+        }
+        return b;
+    }
+}
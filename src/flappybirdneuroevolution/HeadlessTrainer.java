@@ -0,0 +1,94 @@
+package flappybirdneuroevolution;
+
+import java.io.File;
+
+/**
+ *
+ * @author Preston Tang
+ *
+ * Trains birds without opening a window, as fast as the CPU allows.
+ * Usage: HeadlessTrainer [generations] [file to save the best bird to] [threads] [seed]
+ *     [tick budget per generation] [solved score] [islands] [courses]
+ *
+ * With more than one island every island runs the given number of
+ * generations on its own thread, and the threads argument is ignored
+ *
+ */
+public class HeadlessTrainer {
+
+    public static void main(String[] args) throws Exception {
+        int generations = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        File output = args.length > 1 && !args[1].isEmpty() ? new File(args[1]) : null;
+
+        Settings settings = new Settings();
+        settings.threads = args.length > 2 ? Integer.parseInt(args[2])
+                : Runtime.getRuntime().availableProcessors();
+        if (args.length > 3) {
+            settings.seed = Long.parseLong(args[3]);
+        }
+        if (args.length > 4) {
+            settings.tickBudget = Integer.parseInt(args[4]);
+        }
+        if (args.length > 5) {
+            settings.solvedScore = Integer.parseInt(args[5]);
+        }
+        if (args.length > 6) {
+            settings.islands = Integer.parseInt(args[6]);
+        }
+        if (args.length > 7) {
+            settings.courses = Integer.parseInt(args[7]);
+        }
+
+        // A good bird would play one of the extra courses forever
+        if (settings.courses > 1 && !settings.steadyState && settings.tickBudget <= 0) {
+            System.err.println("Playing more than one course needs a tick budget above 0");
+            System.err.println("Usage: HeadlessTrainer [generations] [file to save the best bird to] [threads] [seed]"
+                    + " [tick budget per generation] [solved score] [islands] [courses]");
+            return;
+        }
+
+        if (settings.islands > 1) {
+            trainIslands(settings, generations, output);
+            return;
+        }
+
+        Simulation sim = new Simulation(settings);
+
+        final int[] finished = {0};
+        sim.setGenerationListener(stats -> {
+            finished[0]++;
+            System.out.println(describe(stats));
+        });
+
+        while (finished[0] < generations) {
+            sim.tick();
+        }
+        sim.shutdown();
+
+        save(sim, output);
+    }
+
+    private static void trainIslands(Settings settings, int generations, File output) throws Exception {
+        Islands islands = new Islands(settings);
+        try {
+            islands.run(generations, (island, stats) -> System.out.println("Island " + island + ": " + describe(stats)));
+        } finally {
+            islands.shutdown();
+        }
+
+        save(islands.getBestIsland(), output);
+    }
+
+    private static String describe(GenerationStats stats) {
+        return "Generation " + stats.generation + " ended with score " + stats.score
+                + " (highest " + stats.highscore + ") in " + Math.round(stats.getMillis()) + " ms"
+                + (stats.solved ? ", solved" : stats.timedOut ? ", out of time" : "");
+    }
+
+    private static void save(Simulation sim, File output) throws Exception {
+        if (output != null && sim.getBestBird() != null) {
+            sim.getBestBird().getBrain().writeTo(output, sim.getSettings().storagePrecision);
+            System.out.println("Saved the best bird to " + output);
+        }
+    }
+}
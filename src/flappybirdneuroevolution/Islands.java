@@ -0,0 +1,169 @@
+package flappybirdneuroevolution;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ *
+ * @author Preston Tang
+ *
+ * Several populations evolving side by side, each its own Simulation on
+ * its own thread with its own seed, so its own courses and mutations.
+ * Every few generations each island sends copies of its best birds to
+ * the next island in a ring, which spreads good brains around without
+ * making every island the same.
+ *
+ * Islands never wait for each other. Each one has an inbox holding the
+ * last batch of birds sent to it, a sender swaps in a new batch and the
+ * island takes whatever is there at its next migration, so a slow island
+ * only misses batches instead of holding the others up. Which batch
+ * arrives when depends on how the threads run, so unlike a single
+ * Simulation a seeded run isn't exactly repeatable
+ *
+ */
+public class Islands {
+
+    // Called from an island's own thread whenever one of its generations
+    // is over, so it has to be safe to call from several threads at once
+    public interface IslandListener {
+
+        void generationEnded(int island, GenerationStats stats);
+    }
+
+    // Birds on their way from one island to the next
+    private static final class Migrants {
+
+        final double[] genomes;
+        final double[] scores;
+        int count;
+
+        Migrants(int capacity, int genomeSize) {
+            genomes = new double[capacity * genomeSize];
+            scores = new double[capacity];
+        }
+    }
+
+    private final Settings settings;
+    private final Simulation[] islands;
+
+    // inboxes[i] is the newest batch sent to island i that it hasn't taken yet
+    private final AtomicReferenceArray<Migrants> inboxes;
+
+    private final ExecutorService workers;
+
+    public Islands(Settings settings) {
+        this.settings = settings;
+
+        int count = Math.max(1, settings.islands);
+        islands = new Simulation[count];
+        for (int i = 0; i < count; i++) {
+            // Each island steps its birds on its own thread only
+            Settings own = settings.copy();
+            own.seed = Course.derive(settings.seed, i);
+            own.threads = 1;
+            islands[i] = new Simulation(own);
+        }
+
+        inboxes = new AtomicReferenceArray<>(count);
+        workers = Executors.newFixedThreadPool(count);
+    }
+
+    /**
+     * Runs every island for the given number of generations and waits
+     * for them all to finish.
+     *
+     * @param listener Told about every island's generations, can be null
+     */
+    public void run(int generations, IslandListener listener) throws InterruptedException {
+        List<Future<?>> running = new ArrayList<>();
+        for (int i = 0; i < islands.length; i++) {
+            final int island = i;
+            running.add(workers.submit(() -> runIsland(island, generations, listener)));
+        }
+
+        try {
+            for (Future<?> f : running) {
+                f.get();
+            }
+        } catch (ExecutionException ex) {
+            for (Future<?> f : running) {
+                f.cancel(true);
+            }
+            Throwable cause = ex.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+        }
+    }
+
+    private void runIsland(int island, int generations, IslandListener listener) {
+        Simulation sim = islands[island];
+
+        final int[] finished = {0};
+        sim.setGenerationListener(stats -> {
+            finished[0]++;
+            if (islands.length > 1 && settings.migrants > 0 && settings.migrationInterval > 0
+                    && finished[0] % settings.migrationInterval == 0) {
+                migrate(island);
+            }
+            if (listener != null) {
+                listener.generationEnded(island, stats);
+            }
+        });
+
+        while (finished[0] < generations && !Thread.currentThread().isInterrupted()) {
+            sim.tick();
+        }
+        sim.setGenerationListener(null);
+    }
+
+    // Sends this island's best birds to the next one, and takes in any
+    // that were sent here. Called right after a generation has ended
+    private void migrate(int island) {
+        Simulation sim = islands[island];
+
+        // A new batch every time, since the last one may still be waiting
+        // in the next island's inbox or being read by it
+        Migrants out = new Migrants(settings.migrants, sim.getGenomeSize());
+        out.count = sim.emigrate(out.genomes, out.scores, settings.migrants);
+        if (out.count > 0) {
+            inboxes.set((island + 1) % islands.length, out);
+        }
+
+        Migrants in = inboxes.getAndSet(island, null);
+        if (in != null) {
+            sim.immigrate(in.genomes, in.scores, in.count);
+        }
+    }
+
+    // The island whose best bird has the highest score, only safe to call
+    // while the islands aren't running
+    public Simulation getBestIsland() {
+        Simulation best = islands[0];
+        for (Simulation sim : islands) {
+            if (sim.getHighscore() > best.getHighscore()) {
+                best = sim;
+            }
+        }
+        return best;
+    }
+
+    public Simulation getIsland(int i) {
+        return islands[i];
+    }
+
+    public int size() {
+        return islands.length;
+    }
+
+    // Stops the island threads, the islands can't run afterwards
+    public void shutdown() {
+        workers.shutdownNow();
+        for (Simulation sim : islands) {
+            sim.shutdown();
+        }
+    }
+}
@@ -5,9 +5,6 @@ import com.jfoenix.controls.JFXCheckBox;
 import com.jfoenix.controls.JFXTextField;
 import com.jfoenix.controls.JFXToggleButton;
 import java.io.File;
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.concurrent.ThreadLocalRandom;
 import javafx.animation.AnimationTimer;
 import javafx.application.Application;
 import javafx.geometry.Pos;
@@ -20,7 +17,6 @@ import javafx.scene.layout.HBox;
 import javafx.scene.layout.Pane;
 import javafx.scene.layout.VBox;
 import javafx.scene.paint.Color;
-import javafx.scene.shape.Rectangle;
 import javafx.stage.FileChooser;
 import javafx.stage.Screen;
 import javafx.stage.Stage;
@@ -31,15 +27,11 @@ import javafx.stage.Stage;
  */
 public class Main extends Application {
 
-    // Arrays to keep track of birds & pipes, dead birds go to backup
-    private ArrayList<PipeGroup> pipes = new ArrayList<>();
-    private ArrayList<Bird> birds = new ArrayList<>();
-    private ArrayList<Bird> birdsBackup = new ArrayList<>();
-
-    // To prevent concurrent modification exception
-    private ArrayList<Bird> toRemove = new ArrayList<>();
-
-    private final Rectangle2D bounds = Screen.getPrimary().getBounds();
+    // Settings and the actual game, which runs on its own thread,
+    // Main only draws snapshots of it
+    private Settings settings;
+    private Simulation sim;
+    private SimulationRunner runner;
 
     private double sceneWidth, sceneHeight;
     private double gameWidth, gameHeight;
@@ -47,38 +39,19 @@ public class Main extends Application {
 
     private Pane gameRoot, uiRoot;
 
-    // Default dimensions of each pipe
-    private double pipeWidth = 50;
-    private double pipeGapMin = 130;
-    private double pipeGapMax = 130;
-
-    private double gravity = 0.3;
-
-    private int populationSize = 1000;
-
-    private int score = 0;
-    private int highscore = 0;
-    private int generation = 1;
-
-    private double mutationRate = 0.05;
-
-    // How much of the screen the pipes moves every frame
-    private double pipeUpdatePercentage = 0.002;
-
-    // What percentage of the population will be chosen as parents
-    // Deprecated
-    private double parentPercentage = 0.1;
-
-    private Bird bestBird;
+    // The whole game is drawn onto one canvas
+    private CanvasRenderer renderer;
 
     private Label info, highestScoreLabel;
     private JFXToggleButton trainingMode;
+    private boolean shownTrainingMode = true;
 
     @Override
     public void start(Stage stage) {
         // Setting up the various UI dimensions
         // I have the scene as the base, then game and ui
         // are drawn ontop of it
+        Rectangle2D bounds = Screen.getPrimary().getBounds();
         sceneWidth = bounds.getWidth() * 0.85;
         sceneHeight = bounds.getHeight() * 0.8;
 
@@ -88,6 +61,14 @@ public class Main extends Application {
         uiWidth = sceneWidth;
         uiHeight = sceneHeight * 0.15;
 
+        settings = new Settings();
+        settings.gameWidth = gameWidth;
+        settings.gameHeight = gameHeight;
+        settings.threads = Runtime.getRuntime().availableProcessors();
+
+        sim = new Simulation(settings);
+        runner = new SimulationRunner(sim);
+
         Pane root = new Pane();
         Scene scene = new Scene(root, sceneWidth, sceneHeight);
 
@@ -104,6 +85,9 @@ public class Main extends Application {
         gameRoot.setMaxSize(gameWidth, gameHeight);
         gameRoot.setPrefSize(gameWidth, gameHeight);
 
+        renderer = new CanvasRenderer(gameWidth, gameHeight);
+        gameRoot.getChildren().add(renderer.getCanvas());
+
         uiRoot = new Pane();
         uiRoot.setTranslateY(sceneHeight * 0.85);
         uiRoot.setMaxSize(sceneWidth, sceneHeight * 0.15);
@@ -134,18 +118,27 @@ public class Main extends Application {
         speedControl.setShowTickLabels(true);
         speedControl.setSnapToTicks(true);
         speedControl.setTranslateX(5);
-        speedControl.valueProperty().addListener((obs, oldval, newVal)
-                -> speedControl.setValue(Math.round(newVal.doubleValue())));
 
         JFXCheckBox maxSpeed = new JFXCheckBox();
         maxSpeed.setText("30x Speed");
-        maxSpeed.setOnAction(event -> {
-            if (maxSpeed.isSelected()) {
-                speedControl.setDisable(true);
-            } else {
-                speedControl.setDisable(false);
-            }
+
+        JFXCheckBox unlimitedSpeed = new JFXCheckBox();
+        unlimitedSpeed.setText("Unlimited");
+
+        // The simulation thread picks up the new speed on its next frame
+        Runnable updateSpeed = () -> {
+            speedControl.setDisable(maxSpeed.isSelected() || unlimitedSpeed.isSelected());
+            maxSpeed.setDisable(unlimitedSpeed.isSelected());
+
+            runner.setTicksPerFrame(unlimitedSpeed.isSelected() ? SimulationRunner.UNLIMITED
+                    : maxSpeed.isSelected() ? 31 : (int) Math.round(speedControl.getValue()));
+        };
+        speedControl.valueProperty().addListener((obs, oldval, newVal) -> {
+            speedControl.setValue(Math.round(newVal.doubleValue()));
+            updateSpeed.run();
         });
+        maxSpeed.setOnAction(event -> updateSpeed.run());
+        unlimitedSpeed.setOnAction(event -> updateSpeed.run());
 
         info = new Label();
 
@@ -167,16 +160,16 @@ public class Main extends Application {
         JFXButton nextGeneration = new JFXButton("Next Generation");
         nextGeneration.setStyle("-fx-border-color: black;");
         nextGeneration.setOnAction(event -> {
-            resetAndRepopulate();
+            runner.submit(sim::resetAndRepopulate);
         });
 
         highestScoreLabel = new Label("Highest Score: ");
 
-        JFXTextField setGapMin = new JFXTextField("" + pipeGapMin);
+        JFXTextField setGapMin = new JFXTextField("" + settings.pipeGapMin);
         setGapMin.setPromptText("Pipe Gap Min");
         setGapMin.setLabelFloat(true);
 
-        JFXTextField setGapMax = new JFXTextField("" + pipeGapMax);
+        JFXTextField setGapMax = new JFXTextField("" + settings.pipeGapMax);
         setGapMax.setPromptText("Pipe Gap Max");
         setGapMax.setLabelFloat(true);
 
@@ -184,48 +177,43 @@ public class Main extends Application {
         trainingMode.setText("Training Mode");
         trainingMode.setSelected(true);
         trainingMode.setOnAction(event -> {
+            shownTrainingMode = trainingMode.isSelected();
             if (trainingMode.isSelected()) {
                 //Default training mode
-                if (gameRoot.getChildren().contains(bestBird)) {
-                    gameRoot.getChildren().remove(bestBird);
-                }
-
-                loadBackup();
+                runner.submit(sim::loadBackup);
             } else {
                 //Best Bird mode
-                gameRoot.getChildren().clear();
-                pipes.clear();
-                addStartingPipes();
-                gameRoot.getChildren().add(bestBird);
-                score = 0;
-
-                bestBird.resetPosition();
-                bestBird.setAlive(true);
+                runner.submit(sim::startBestBirdMode);
             }
         });
 
         JFXButton save = new JFXButton("Save");
         save.setStyle("-fx-border-color: black;");
         save.setOnAction(event -> {
-            if (setGapMin.getText().chars().allMatch(Character::isDigit)
-                    && Double.parseDouble(setGapMin.getText()) <= gameHeight
-                    && Double.parseDouble(setGapMin.getText()) <= pipeGapMax) {
-                pipeGapMin = Double.parseDouble(setGapMin.getText());
-            }
+            String min = setGapMin.getText();
+            String max = setGapMax.getText();
+
+            // The simulation reads the settings, so change them on its thread
+            runner.submit(() -> {
+                if (min.chars().allMatch(Character::isDigit)
+                        && Double.parseDouble(min) <= gameHeight
+                        && Double.parseDouble(min) <= settings.pipeGapMax) {
+                    settings.pipeGapMin = Double.parseDouble(min);
+                }
 
-            if (setGapMax.getText().chars().allMatch(Character::isDigit)
-                    && Double.parseDouble(setGapMax.getText()) <= gameHeight
-                    && Double.parseDouble(setGapMax.getText()) >= pipeGapMin) {
-                pipeGapMax = Double.parseDouble(setGapMax.getText());
-            }
+                if (max.chars().allMatch(Character::isDigit)
+                        && Double.parseDouble(max) <= gameHeight
+                        && Double.parseDouble(max) >= settings.pipeGapMin) {
+                    settings.pipeGapMax = Double.parseDouble(max);
+                }
+            });
         });
 
         JFXButton resetBestBird = new JFXButton("Reset Best");
         resetBestBird.setStyle("-fx-border-color: black;");
         resetBestBird.setRipplerFill(Color.RED);
         resetBestBird.setOnAction(event -> {
-            highscore = 0;
-            bestBird = null;
+            runner.submit(sim::resetBest);
             highestScoreLabel.setText("Highest Score: 0");
         });
 
@@ -241,10 +229,12 @@ public class Main extends Application {
             );
             File file = fileChooser.showSaveDialog(stage);
             if (file != null) {
-                try {
-                    bestBird.getBrain().writeTo(file);
-                } catch (Exception ex) {
-                }
+                runner.submit(() -> {
+                    try {
+                        sim.getBestBird().getBrain().writeTo(file);
+                    } catch (Exception ex) {
+                    }
+                });
             }
         });
 
@@ -259,26 +249,30 @@ public class Main extends Application {
             );
             File file = fileChooser.showOpenDialog(stage);
             if (file != null) {
-                bestBird = new Bird(mutationRate, 5.0, gameWidth, gameHeight);
-                bestBird.setScore(9999999);
-                bestBird.setWidth(20);
-                bestBird.setHeight(20);
-                bestBird.setFill(Color.rgb(0, 0, 0, 0.15));
-                try {
-                    bestBird.getBrain().readFrom(file);
-                } catch (Exception ex) {
-                    ex.printStackTrace();
-                }
+                // Made on the simulation thread, since new brains come
+                // from the simulation's random stream
+                runner.submit(() -> {
+                    Bird bestBird = sim.createBird();
+                    bestBird.setScore(9999999);
+                    try {
+                        bestBird.getBrain().readFrom(file);
+                    } catch (Exception ex) {
+                        ex.printStackTrace();
+                    }
+                    sim.setBestBird(bestBird);
+                });
             }
         });
 
         JFXButton derive = new JFXButton("Derive From Best");
         derive.setStyle("-fx-border-color: black;");
         derive.setOnAction(event -> {
-            deriveFromBest();
+            trainingMode.setSelected(true);
+            shownTrainingMode = true;
+            runner.submit(sim::deriveFromBest);
         });
 
-        box.getChildren().addAll(speedControl, maxSpeed, setGapMin, setGapMax, save, displayGame, nextGeneration, derive);
+        box.getChildren().addAll(speedControl, maxSpeed, unlimitedSpeed, setGapMin, setGapMax, save, displayGame, nextGeneration, derive);
         box2.getChildren().addAll(trainingMode,
                 saveBest, resetBestBird, loadBest, info, highestScoreLabel);
 
@@ -286,384 +280,46 @@ public class Main extends Application {
 
         root.getChildren().addAll(gameRoot, sep, uiRoot);
 
-        addStartingPipes();
-
-        for (int i = 0; i < populationSize; i++) {
-            Bird b = new Bird(mutationRate, 5.0, gameWidth, gameHeight);
-            b.setWidth(20);
-            b.setHeight(20);
-            b.setFill(Color.rgb(0, 0, 0, 0.15));
-            birds.add(b);
-            gameRoot.getChildren().add(b);
-        }
+        runner.start();
 
+        // The game runs on its own, every frame just shows the latest snapshot
         AnimationTimer timer = new AnimationTimer() {
             @Override
             public void handle(long now) {
-                // For loop is used to handle the game speed
-                for (int a = 0;
-                        a < (maxSpeed.isSelected() ? 31 : Math.round(speedControl.getValue()));
-                        a++) {
-                    if (!trainingMode.isSelected()) {
-                        if (bestBird.isAlive()) {
-                            score++;
-
-                            // I don't call this every frame to save memory
-                            if (score % 10 == 0) {
-                                updateStatus();
-                            }
-
-                            pipeManagement();
-
-                            bestBird.update(gravity);
-                            bestBird.setScore(score);
-
-                            // Dies when out of bounds or hits pipe
-                            if (bestBird.getTranslateY() < 0 || bestBird.getTranslateY() + bestBird.getHeight() > gameHeight
-                                    || isBirdInPipeGroup(bestBird, getClosestPipe(bestBird))) {
-                                bestBird.setAlive(false);
-                                gameRoot.getChildren().remove(bestBird);
-                            }
-
-                            // Move
-                            bestBird.action(getClosestPipe(bestBird));
-
-                        } else {
-                            gameRoot.getChildren().remove(bestBird);
-                            loadBackup();
-                            trainingMode.setSelected(true);
-
-                            // Temporary Bug Fix
-                            // For some reason after it dies the loaded
-                            // bird gets deleted
-                            // Probably applies to birds that aren't loaded but
-                            // generated in the current instance as well
-                            bestBird.setScore(999999);
-                        }
-                    } else {
-                        // If there are still birds
-                        if (!birds.isEmpty()) {
-                            score++;
-
-                            if (score % 10 == 0) {
-                                updateStatus();
-                                newBestBird();
-                            }
-                            pipeManagement();
-
-                            // Loop through birds
-                            for (int i = 0; i < birds.size(); i++) {
-                                Bird b = birds.get(i);
-
-                                if (b.isAlive()) {
-                                    b.update(gravity);
-                                    b.setScore(score);
-
-                                    // Dies when out of bounds or hits pipe
-                                    if (b.getTranslateY() < 0 || b.getTranslateY() + b.getHeight() > gameHeight
-                                            || isBirdInPipeGroup(b, getClosestPipe(b))) {
-                                        b.setAlive(false);
-                                        gameRoot.getChildren().remove(b);
-                                        toRemove.add(b);
-                                    }
-
-                                    // Move
-                                    b.action(getClosestPipe(b));
-                                }
-                            }
-
-                            // Remove birds
-                            for (Bird b : toRemove) {
-                                birds.remove(b);
-                                birdsBackup.add(b);
-                            }
-                            toRemove.clear();
-
-                        } else {
-                            // They've all died, time for new gen
-                            resetAndRepopulate();
-                        }
-                    }
+                Snapshot snapshot = runner.getSnapshot();
+
+                // The best bird switches back to training on its own when it dies
+                if (snapshot.trainingMode != shownTrainingMode) {
+                    shownTrainingMode = snapshot.trainingMode;
+                    trainingMode.setSelected(shownTrainingMode);
                 }
+
+                updateStatus(snapshot);
+                if (displayGame.isSelected()) {
+                    renderer.draw(snapshot);
+                }
+
+                runner.releaseSnapshot();
             }
         };
         timer.start();
     }
 
-    // Finds a new best bird if there is one (comparison of score)
-    private void newBestBird() {
-        if (bestBird == null) {
-            bestBird = birds.size() != 1 ? birds.get(
-                    ThreadLocalRandom.current().nextInt(0,
-                            birds.size() - 1)) : birds.get(0);
-        } else {
-            if (score > bestBird.getScore()) {
-                bestBird = birds.size() != 1 ? birds.get(
-                        ThreadLocalRandom.current().nextInt(0,
-                                birds.size() - 1)) : birds.get(0);
-            }
-        }
+    @Override
+    public void stop() throws Exception {
+        runner.stop();
     }
 
     // Updates some UI elements
-    private void updateStatus() {
-        highscore = score > highscore ? score : highscore;
-
-        highestScoreLabel.setText("Highest Score: " + highscore);
+    private void updateStatus(Snapshot snapshot) {
+        highestScoreLabel.setText("Highest Score: " + snapshot.highscore);
 
         info.setText(String.format("%s %10s %12s %14s %12s",
-                "Pipes: " + pipes.size(),
-                " | Birds: " + birds.size(),
-                " | Backup: " + birdsBackup.size(),
-                " | Score: " + score,
-                " | Generation: " + generation));
-    }
-
-    // Handles pipe display
-    private void pipeManagement() {
-        // Add pipes
-        if (gameWidth - pipes.get(pipes.size() - 1).getTranslateX() > gameWidth / 4) {
-            PipeGroup p = new PipeGroup(gameWidth * pipeUpdatePercentage,
-                    gameWidth, gameHeight,
-                    pipeGapMin == pipeGapMax ? pipeGapMin
-                            : ThreadLocalRandom.current().nextDouble(pipeGapMin,
-                                    pipeGapMax), pipeWidth);
-            gameRoot.getChildren().add(p);
-            pipes.add(p);
-        }
-
-        // Remove pipes when out of screen
-        for (Iterator<PipeGroup> iterator = pipes.iterator(); iterator.hasNext();) {
-            PipeGroup p = iterator.next();
-
-            if (p.getTranslateX() + pipeWidth < 0) {
-                iterator.remove();
-                gameRoot.getChildren().remove(p);
-            }
-
-            // Move the pipes to the left of the screen
-            p.update();
-        }
-    }
-
-    // Used when switching between best bird mode and training mode
-    private void loadBackup() {
-        gameRoot.getChildren().clear();
-        pipes.clear();
-
-        //Create the first 2 pipes
-        addStartingPipes();
-
-        birds.addAll(birdsBackup);
-
-        for (Bird b : birds) {
-            b.setAlive(true);
-            b.setScore(0);
-            gameRoot.getChildren().add(b);
-        }
-
-        birdsBackup.clear();
-    }
-
-    // Creates the next generation as clones of the current saved best bird
-    private void deriveFromBest() {
-        trainingMode.setSelected(true);
-
-        birds.clear();
-        birdsBackup.clear();
-
-        bestBird.setWidth(20);
-        bestBird.setHeight(20);
-        bestBird.setFill(Color.rgb(0, 0, 0, 0.15));
-
-        birdsBackup.add(bestBird);
-
-        bestBird.resetPosition();
-
-        for (int i = 0; i < populationSize - 1; i++) {
-            Bird b = new Bird(bestBird.getBrain(), mutationRate, 5.0, gameWidth, gameHeight);
-            b.setWidth(20);
-            b.setHeight(20);
-            b.setFill(Color.rgb(0, 0, 0, 0.15));
-            birdsBackup.add(b);
-        }
-
-        loadBackup();
-    }
-
-    private void resetAndRepopulate() {
-        gameRoot.getChildren().clear();
-        pipes.clear();
-
-        // Create the first 2 pipes
-        addStartingPipes();
-
-        birdsBackup.addAll(birds);
-        birds.clear();
-        generation++;
-        // If it passed the first 2 pipes
-        if (score > 270) {
-            // Set fitness values to between 0 and 1
-            normalizeFitness();
-
-            // Generate next generation
-            generate();
-
-            // Draw new generation
-            for (Bird b : birds) {
-                b.setAlive(true);
-                b.setWidth(20);
-                b.setHeight(20);
-                b.setFill(Color.rgb(0, 0, 0, 0.15));
-                gameRoot.getChildren().add(b);
-            }
-            birdsBackup.clear();
-
-            // If it doesn't even pass the first 2 pipes just wipe everything and restart
-        } else {
-            generation = 1;
-
-            for (int i = 0; i < populationSize; i++) {
-                Bird b = new Bird(mutationRate, 5.0, gameWidth, gameHeight);
-                b.setWidth(20);
-                b.setHeight(20);
-                b.setFill(Color.rgb(0, 0, 0, 0.15));
-                birds.add(b);
-                gameRoot.getChildren().add(b);
-            }
-
-            birdsBackup.clear();
-        }
-
-        score = 0;
-    }
-
-//    private void generate() {
-//        Bird[] parents = new Bird[(int) (populationSize * parentPercentage)];
-//
-//        for (int i = 0; i < parents.length; i++) {
-//            parents[i] = poolSelection();
-//        }
-//
-//        for (int i = 0; i < (int) parents.length; i += 2) {
-//            for (int a = 0;
-//                    a < ((populationSize) / (parents.length / 2));
-//                    a++) {
-//                birds.add(parents[i].mate(parents[i + 1]));
-//            }
-//        }
-//    }
-    
-    private void generate() {
-        // They won't be similar cause I remove them in poolSelection()
-        Bird parent1 = poolSelection();
-        Bird parent2 = poolSelection();
-
-        for (int i = 0; i < populationSize; i++) {
-            birds.add(parent1.mate(parent2));
-        }
-
-//        birds.add(parent1);
-//        birds.add(parent2);
-    }
-
-    // From coding train, translated to Java
-    private void normalizeFitness() {
-        // Make fitness score exponentially better
-        for (int i = 0; i < birdsBackup.size(); i++) {
-            birdsBackup.get(i).setFitness(Math.pow(birdsBackup.get(i).getScore(), 2));
-        }
-
-        // Add up all the fitness scores
-        double sum = 0;
-        for (int i = 0; i < birdsBackup.size(); i++) {
-            sum += birdsBackup.get(i).getFitness();
-        }
-        // Divide by the sum
-        for (int i = 0; i < birdsBackup.size(); i++) {
-            birdsBackup.get(i).setFitness(birdsBackup.get(i).getFitness() / sum);
-        }
-    }
-
-    // From coding train, translated to Java
-    // Picks 1 bird from an arraylist based on fitness
-    private Bird poolSelection() {
-        // Start at 0
-        int index = 0;
-
-        // Pick a random number between 0 and 1
-        double r = Math.random();
-
-        // Keep subtracting probabilities until you get less than zero
-        // Higher probabilities will be more likely to be fixed since they will
-        // subtract a larger number towards zero
-        while (r > 0) {
-            r -= birdsBackup.get(index).getFitness();
-            // And move on to the next
-            index += 1;
-        }
-
-        // Go back one
-        index -= 1;
-
-        // Make sure it's a copy!
-        // (this includes mutation)
-        Bird result = birdsBackup.get(index);
-
-//        birdsBackup.remove(result);
-        return result;
-    }
-
-    // Handles collision detection
-    private boolean isBirdInPipeGroup(Bird b, PipeGroup p) {
-        boolean result = false;
-
-        Rectangle top = p.getTopPipe();
-        Rectangle bottom = p.getBottomPipe();
-
-        //If within the x region
-        //Check if in top or bottom pipe
-        if (b.getBoundsInParent().intersects(p.getTranslateX(), p.getTranslateY(),
-                top.getWidth(), top.getHeight())
-                || b.getBoundsInParent().intersects(p.getTranslateX(),
-                        top.getHeight() + p.getGap(),
-                        bottom.getWidth(), bottom.getHeight())) {
-            result = true;
-        }
-
-        return result;
-    }
-
-    private void addStartingPipes() {
-        PipeGroup pipe = new PipeGroup(gameWidth * pipeUpdatePercentage, gameWidth, gameHeight, pipeGapMin == pipeGapMax ? pipeGapMin
-                : ThreadLocalRandom.current().nextDouble(pipeGapMin,
-                        pipeGapMax), pipeWidth);
-        gameRoot.getChildren().add(pipe);
-        pipes.add(pipe);
-        pipe.setTranslateX(gameWidth / 2.0);
-
-        PipeGroup pipe1 = new PipeGroup(gameWidth * pipeUpdatePercentage, gameWidth, gameHeight, pipeGapMin == pipeGapMax ? pipeGapMin
-                : ThreadLocalRandom.current().nextDouble(pipeGapMin,
-                        pipeGapMax), pipeWidth);
-        gameRoot.getChildren().add(pipe1);
-        pipes.add(pipe1);
-        pipe1.setTranslateX(gameWidth - (gameWidth / 4.0));
-    }
-
-    private PipeGroup getClosestPipe(Bird b) {
-        PipeGroup closest = null;
-
-        double dist = Double.MAX_VALUE;
-
-        for (PipeGroup p : pipes) {
-            if (p.getTranslateX() + p.getWidth() > b.getTranslateX()
-                    && p.getTranslateX() - b.getTranslateX() < dist) {
-                closest = p;
-                dist = p.getTranslateX() - b.getTranslateX();
-            }
-        }
-
-        return closest;
+                "Pipes: " + snapshot.pipeCount,
+                " | Birds: " + snapshot.birdCount,
+                " | Backup: " + snapshot.backupCount,
+                " | Score: " + snapshot.score,
+                " | Generation: " + snapshot.generation));
     }
 
     public static void main(String[] args) {
@@ -37,16 +37,23 @@ public class Mat implements Serializable, Cloneable
 	 */
 	public final int cols;
 	/**
-	 * This is the raw double array with the respective rows and
-	 * columns. This would be the same as a
-	 * <code>new double[rows][cols]</code>.
+	 * This is the raw storage of the matrix, laid out row by row
+	 * (row-major). The element at <code>(r, c)</code> lives at
+	 * <code>flat[offset + r * cols + c]</code>. Keeping everything in
+	 * one contiguous array means walking the matrix is a single
+	 * linear pass with no per-row pointer chasing.
 	 */
-	public final double[][] data;
+	public final double[] flat;
+	/**
+	 * The index in {@link #flat} where this matrix starts. This is
+	 * <code>0</code> unless the matrix wraps a slice of a bigger array.
+	 */
+	public final int offset;
 	
 	/**
 	 * This creates a matrix with the rows and columns specified in
-	 * the parameters. It'll be a new 2-dimensional double array
-	 * initialized as <code>new double[rows][cols]</code>.
+	 * the parameters. It'll be backed by a new zeroed double array
+	 * of <code>rows * cols</code> elements.
 	 * 
 	 * @param rows The amount of rows in the matrix
 	 * @param cols The amount of columns in the matrix
@@ -55,7 +62,8 @@ public class Mat implements Serializable, Cloneable
 	{
 		this.rows = rows;
 		this.cols = cols;
-		this.data = new double[rows][cols];
+		this.flat = new double[rows * cols];
+		this.offset = 0;
 	}
 	
 	/**
@@ -68,19 +76,66 @@ public class Mat implements Serializable, Cloneable
 	 */
 	public Mat(double[][] data)
 	{
-		this.rows = data.length;
-		this.cols = data[0].length;
-		this.data = new double[rows][cols];
-		// Simple copy of a 2-dimensional double array
+		this(data.length, data[0].length);
+		// Copy each row into its slot of the flat array
 		for(int r = 0; r < rows; r++)
 		{
-			for(int c = 0; c < cols; c++)
-			{
-				this.data[r][c] = data[r][c];
-			}
+			System.arraycopy(data[r], 0, flat, r * cols, cols);
 		}
 	}
 	
+	/**
+	 * This wraps an existing array as a matrix without copying it.
+	 * Any changes made through this matrix are visible in the array
+	 * and the other way around.
+	 * 
+	 * @param flat The array holding the values, row-major
+	 * @param offset Where the first element of the matrix is
+	 * @param rows The amount of rows in the matrix
+	 * @param cols The amount of columns in the matrix
+	 */
+	public Mat(double[] flat, int offset, int rows, int cols)
+	{
+		if(offset < 0 || offset + rows * cols > flat.length) throw new RuntimeException("Matrix doesn't fit in the array");
+		
+		this.rows = rows;
+		this.cols = cols;
+		this.flat = flat;
+		this.offset = offset;
+	}
+	
+	/**
+	 * @param r The row of the element
+	 * @param c The column of the element
+	 * 
+	 * @return The value at the given row and column
+	 */
+	public double get(int r, int c)
+	{
+		return flat[offset + r * cols + c];
+	}
+	
+	/**
+	 * Set the value at the given row and column.
+	 * <br><br><b>NOTE: This modifies the current matrix!</b>
+	 * 
+	 * @param r The row of the element
+	 * @param c The column of the element
+	 * @param val The new value
+	 */
+	public void set(int r, int c, double val)
+	{
+		flat[offset + r * cols + c] = val;
+	}
+	
+	/**
+	 * @return The amount of elements in this matrix
+	 */
+	public int size()
+	{
+		return rows * cols;
+	}
+	
 	/**
 	 * This method will randomize all the data for this matrix. What
 	 * the values are set to are between <code>-1</code> to
@@ -107,14 +162,26 @@ public class Mat implements Serializable, Cloneable
 	 */
 	public Mat randomize(final Random rand)
 	{
-		return map(new MatFunc()
+		for(int i = offset, end = offset + size(); i < end; i++)
 		{
-			@Override
-			public double perform(double val, int r, int c)
-			{
-				return rand.nextDouble() * 2 - 1;
-			}
-		});
+			flat[i] = rand.nextDouble() * 2 - 1;
+		}
+		return this;
+	}
+	
+	/**
+	 * Copy every element of the given matrix into this one.
+	 * <br><br><b>NOTE: This modifies the current matrix!</b>
+	 * 
+	 * @param mat The matrix to copy from, must be the same size
+	 * 
+	 * @return this
+	 */
+	public Mat copyFrom(Mat mat)
+	{
+		checkSameSize(mat);
+		System.arraycopy(mat.flat, mat.offset, flat, offset, size());
+		return this;
 	}
 	
 	/**
@@ -127,14 +194,29 @@ public class Mat implements Serializable, Cloneable
 	 */
 	public Mat add(final Mat mat)
 	{
-		return new Mat(data).map(new MatFunc()
+		return clone().addInPlace(mat);
+	}
+	
+	/**
+	 * Add each element in the given matrix to the corresponding
+	 * index in this matrix.
+	 * <br><br><b>NOTE: This modifies the current matrix!</b>
+	 * 
+	 * @param mat The other matrix to add to this
+	 * 
+	 * @return this
+	 */
+	public Mat addInPlace(Mat mat)
+	{
+		checkSameSize(mat);
+		
+		final double[] a = flat, b = mat.flat;
+		final int n = size(), ao = offset, bo = mat.offset;
+		for(int i = 0; i < n; i++)
 		{
-			@Override
-			public double perform(double val, int r, int c)
-			{
-				return val + mat.data[r][c];
-			}
-		});
+			a[ao + i] += b[bo + i];
+		}
+		return this;
 	}
 	
 	/**
@@ -146,14 +228,24 @@ public class Mat implements Serializable, Cloneable
 	 */
 	public Mat add(final double v)
 	{
-		return new Mat(data).map(new MatFunc()
+		return clone().addInPlace(v);
+	}
+	
+	/**
+	 * Add the given value to each element in this matrix.
+	 * <br><br><b>NOTE: This modifies the current matrix!</b>
+	 * 
+	 * @param v The value to add to each element
+	 * 
+	 * @return this
+	 */
+	public Mat addInPlace(double v)
+	{
+		for(int i = offset, end = offset + size(); i < end; i++)
 		{
-			@Override
-			public double perform(double val, int r, int c)
-			{
-				return val + v;
-			}
-		});
+			flat[i] += v;
+		}
+		return this;
 	}
 	
 	/**
@@ -166,14 +258,29 @@ public class Mat implements Serializable, Cloneable
 	 */
 	public Mat subtract(final Mat mat)
 	{
-		return new Mat(data).map(new MatFunc()
+		return clone().subtractInPlace(mat);
+	}
+	
+	/**
+	 * Subtract each element in the given matrix from the
+	 * corresponding index in this matrix.
+	 * <br><br><b>NOTE: This modifies the current matrix!</b>
+	 * 
+	 * @param mat The other matrix to subtract from this
+	 * 
+	 * @return this
+	 */
+	public Mat subtractInPlace(Mat mat)
+	{
+		checkSameSize(mat);
+		
+		final double[] a = flat, b = mat.flat;
+		final int n = size(), ao = offset, bo = mat.offset;
+		for(int i = 0; i < n; i++)
 		{
-			@Override
-			public double perform(double val, int r, int c)
-			{
-				return val - mat.data[r][c];
-			}
-		});
+			a[ao + i] -= b[bo + i];
+		}
+		return this;
 	}
 	
 	/**
@@ -185,14 +292,7 @@ public class Mat implements Serializable, Cloneable
 	 */
 	public Mat subtract(final double v)
 	{
-		return new Mat(data).map(new MatFunc()
-		{
-			@Override
-			public double perform(double val, int r, int c)
-			{
-				return val - v;
-			}
-		});
+		return clone().addInPlace(-v);
 	}
 	
 	/**
@@ -216,14 +316,31 @@ public class Mat implements Serializable, Cloneable
 	 */
 	public Mat transpose()
 	{
-		return new Mat(cols, rows).map(new MatFunc()
+		return transposeInto(new Mat(cols, rows));
+	}
+	
+	/**
+	 * Write the transposition of this matrix into the given matrix.
+	 * See {@link #transpose()}.
+	 * 
+	 * @param dest The matrix to write to, must be <code>cols x rows</code>
+	 * 			and must not be this matrix
+	 * 
+	 * @return dest
+	 */
+	public Mat transposeInto(Mat dest)
+	{
+		if(dest.rows != cols || dest.cols != rows) throw new RuntimeException("Destination must be " + cols + "x" + rows);
+		
+		for(int r = 0; r < rows; r++)
 		{
-			@Override
-			public double perform(double val, int r, int c)
+			int src = offset + r * cols;
+			for(int c = 0; c < cols; c++)
 			{
-				return data[c][r];
+				dest.flat[dest.offset + c * rows + r] = flat[src + c];
 			}
-		});
+		}
+		return dest;
 	}
 	
 	/**
@@ -235,14 +352,24 @@ public class Mat implements Serializable, Cloneable
 	 */
 	public Mat mult(final double scl)
 	{
-		return new Mat(data).map(new MatFunc()
+		return clone().multInPlace(scl);
+	}
+	
+	/**
+	 * Multiply the given value with each element in this matrix.
+	 * <br><br><b>NOTE: This modifies the current matrix!</b>
+	 * 
+	 * @param scl The value to multiply with each element
+	 * 
+	 * @return this
+	 */
+	public Mat multInPlace(double scl)
+	{
+		for(int i = offset, end = offset + size(); i < end; i++)
 		{
-			@Override
-			public double perform(double val, int r, int c)
-			{
-				return val * scl;
-			}
-		});
+			flat[i] *= scl;
+		}
+		return this;
 	}
 
 	/**
@@ -256,36 +383,72 @@ public class Mat implements Serializable, Cloneable
 	 */
 	public Mat elementMult(final Mat mat)
 	{
-		return new Mat(data).map(new MatFunc()
+		return clone().elementMultInPlace(mat);
+	}
+	
+	/**
+	 * Multiply each element in this matrix with the corresponding
+	 * index in the given matrix.
+	 * <br><br><b>NOTE: This modifies the current matrix!</b>
+	 * 
+	 * @param mat The matrix to multiply from this
+	 * 
+	 * @return this
+	 */
+	public Mat elementMultInPlace(Mat mat)
+	{
+		checkSameSize(mat);
+		
+		final double[] a = flat, b = mat.flat;
+		final int n = size(), ao = offset, bo = mat.offset;
+		for(int i = 0; i < n; i++)
 		{
-			@Override
-			public double perform(double val, int r, int c)
-			{
-				return val * mat.data[r][c];
-			}
-		});
+			a[ao + i] *= b[bo + i];
+		}
+		return this;
 	}
 
 	/**
 	 * {@link https://en.wikipedia.org/wiki/Matrix_multiplication}
 	 */
 	public Mat mult(final Mat mat)
+	{
+		return multInto(mat, new Mat(rows, mat.cols));
+	}
+	
+	/**
+	 * Matrix multiply this with the given matrix and write the
+	 * result into <code>dest</code> instead of a new matrix. Nothing
+	 * gets allocated, so this is what the hot paths should use.
+	 * 
+	 * @param mat The matrix on the right side of the multiplication
+	 * @param dest Where the result goes, must be <code>rows x mat.cols</code>
+	 * 			and must not be either of the inputs
+	 * 
+	 * @return dest
+	 */
+	public Mat multInto(Mat mat, Mat dest)
 	{
 		if(cols != mat.rows) throw new RuntimeException("Rows don't match columns");
+		if(dest.rows != rows || dest.cols != mat.cols) throw new RuntimeException("Destination must be " + rows + "x" + mat.cols);
 		
-		return new Mat(rows, mat.cols).map(new MatFunc()
+		final double[] a = flat, b = mat.flat, d = dest.flat;
+		final int n = mat.cols;
+		for(int r = 0; r < rows; r++)
 		{
-			@Override
-			public double perform(double val, int r, int c)
+			int ar = offset + r * cols;
+			int dr = dest.offset + r * n;
+			for(int c = 0; c < n; c++)
 			{
 				double sum = 0;
 				for(int i = 0; i < cols; i++)
 				{
-					sum += data[r][i] * mat.data[i][c];
+					sum += a[ar + i] * b[mat.offset + i * n + c];
 				}
-				return sum;
+				d[dr + c] = sum;
 			}
-		});
+		}
+		return dest;
 	}
 	
 	/**
@@ -298,12 +461,27 @@ public class Mat implements Serializable, Cloneable
 	 * @return this
 	 */
 	public Mat map(MatFunc func)
+	{
+		return mapInPlace(func);
+	}
+	
+	/**
+	 * Same as {@link #map(MatFunc)}, named to make it obvious at the
+	 * call site that nothing is being copied.
+	 * <br><br><b>NOTE: This modifies the current matrix!</b>
+	 * 
+	 * @param func The function to perform on each element
+	 * 
+	 * @return this
+	 */
+	public Mat mapInPlace(MatFunc func)
 	{
 		for(int r = 0; r < rows; r++)
 		{
+			int row = offset + r * cols;
 			for(int c = 0; c < cols; c++)
 			{
-				data[r][c] = func.perform(data[r][c], r, c);
+				flat[row + c] = func.perform(flat[row + c], r, c);
 			}
 		}
 		return this;
@@ -317,15 +495,37 @@ public class Mat implements Serializable, Cloneable
 	 */
 	public double[] toArray()
 	{
-		double[] arr = new double[rows * cols];
+		return Arrays.copyOfRange(flat, offset, offset + size());
+	}
+	
+	/**
+	 * Same as {@link #toArray()} but copies into the given array.
+	 * 
+	 * @param arr The array to copy into, must fit every element
+	 * 
+	 * @return arr
+	 */
+	public double[] toArray(double[] arr)
+	{
+		System.arraycopy(flat, offset, arr, 0, size());
+		return arr;
+	}
+	
+	/**
+	 * This is the old 2-dimensional view of the matrix, kept around
+	 * for code that still wants to index with <code>[r][c]</code>.
+	 * It's a copy, so writing to it won't change the matrix.
+	 * 
+	 * @return A new <code>double[rows][cols]</code> with the values
+	 */
+	public double[][] toData()
+	{
+		double[][] data = new double[rows][cols];
 		for(int r = 0; r < rows; r++)
 		{
-			for(int c = 0; c < cols; c++)
-			{
-				arr[c + r * cols] = data[r][c];
-			}
+			System.arraycopy(flat, offset + r * cols, data[r], 0, cols);
 		}
-		return arr;
+		return data;
 	}
 	
 	/**
@@ -340,7 +540,7 @@ public class Mat implements Serializable, Cloneable
 		double[] column = new double[rows];
 		for(int i = 0; i < rows; i++)
 		{
-			column[i] = data[i][col];
+			column[i] = flat[offset + i * cols + col];
 		}
 		return column;
 	}
@@ -350,7 +550,7 @@ public class Mat implements Serializable, Cloneable
 	 */
 	public Mat clone()
 	{
-		return new Mat(data);
+		return new Mat(rows, cols).copyFrom(this);
 	}
 	
 	/**
@@ -358,7 +558,7 @@ public class Mat implements Serializable, Cloneable
 	 */
 	public String toArrayString()
 	{
-		return Arrays.deepToString(data);
+		return Arrays.deepToString(toData());
 	}
 	
 	public String toString()
@@ -369,7 +569,7 @@ public class Mat implements Serializable, Cloneable
 			sb.append("[");
 			for(int c = 0; c < cols; c++)
 			{
-				sb.append(data[r][c]);
+				sb.append(get(r, c));
 
 				if(c < cols - 1) sb.append(", ");
 			}
@@ -380,6 +580,11 @@ public class Mat implements Serializable, Cloneable
 		return sb.toString();
 	}
 	
+	private void checkSameSize(Mat mat)
+	{
+		if(rows != mat.rows || cols != mat.cols) throw new RuntimeException("Matrix sizes don't match");
+	}
+	
 	/**
 	 * Create an array with one column with the given array
 	 * 
@@ -391,10 +596,7 @@ public class Mat implements Serializable, Cloneable
 	public static Mat fromArray(double[] arr)
 	{
 		Mat mat = new Mat(arr.length, 1);
-		for(int i = 0; i < arr.length; i++)
-		{
-			mat.data[i][0] = arr[i];
-		}
+		System.arraycopy(arr, 0, mat.flat, 0, arr.length);
 		return mat;
 	}
 	
@@ -454,5 +656,5 @@ public class Mat implements Serializable, Cloneable
 		}
 	};
 	
-	private static final long serialVersionUID = 3107367440033528127L;
+	private static final long serialVersionUID = -4418916046528810362L;
 }
\ No newline at end of file
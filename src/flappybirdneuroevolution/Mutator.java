@@ -0,0 +1,119 @@
+package flappybirdneuroevolution;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ *
+ * @author Preston Tang
+ *
+ * Mutates and randomizes genes from its own random stream. Instead of
+ * rolling the dice for every gene, it works out how many genes to skip
+ * until the next one that mutates, so with a 5% chance only about one in
+ * twenty genes costs anything.
+ *
+ * A Mutator isn't thread safe, every thread should have its own. split()
+ * makes a new independent one, so a seeded run hands out the same streams
+ * no matter how many threads are used
+ *
+ */
+public class Mutator {
+
+    // Streams for code that doesn't care about reproducing a run
+    private static final ThreadLocal<Mutator> CURRENT = new ThreadLocal<Mutator>() {
+        @Override
+        protected Mutator initialValue() {
+            return new Mutator(ThreadLocalRandom.current().nextLong());
+        }
+    };
+
+    private final SplittableRandom random;
+
+    public Mutator(long seed) {
+        this(new SplittableRandom(seed));
+    }
+
+    private Mutator(SplittableRandom random) {
+        this.random = random;
+    }
+
+    /**
+     * One of many independent streams worked out from the same seed, so
+     * work split into numbered pieces gets the same random numbers no
+     * matter which thread runs which piece.
+     */
+    public static Mutator forStream(long seed, long stream) {
+        return new Mutator(Course.derive(seed, stream));
+    }
+
+    // This thread's own unseeded mutator
+    public static Mutator current() {
+        return CURRENT.get();
+    }
+
+    // A new mutator whose stream doesn't overlap this one's
+    public Mutator split() {
+        return new Mutator(random.split());
+    }
+
+    public SplittableRandom getRandom() {
+        return random;
+    }
+
+    /**
+     * Adds a random amount between low and high to each of genes[from]
+     * to genes[to - 1] with the given chance.
+     *
+     * @return How many genes were mutated
+     */
+    public int mutate(double[] genes, int from, int to, double chance, double low, double high) {
+        if (chance <= 0) {
+            return 0;
+        }
+
+        double range = high - low;
+
+        if (chance >= 1) {
+            for (int i = from; i < to; i++) {
+                genes[i] += low + range * random.nextDouble();
+            }
+            return to - from;
+        }
+
+        // The gap between mutations is geometric, so it can be drawn
+        // straight away from one uniform number
+        double logMiss = Math.log1p(-chance);
+
+        int count = 0;
+        long i = from + skip(logMiss);
+        while (i < to) {
+            genes[(int) i] += low + range * random.nextDouble();
+            count++;
+            i += 1 + skip(logMiss);
+        }
+        return count;
+    }
+
+    public int mutate(Mat mat, double chance, double low, double high) {
+        return mutate(mat.flat, mat.offset, mat.offset + mat.size(), chance, low, high);
+    }
+
+    // Sets genes[from] to genes[to - 1] to random values between low and high
+    public void randomize(double[] genes, int from, int to, double low, double high) {
+        double range = high - low;
+        for (int i = from; i < to; i++) {
+            genes[i] = low + range * random.nextDouble();
+        }
+    }
+
+    public void randomize(Mat mat, double low, double high) {
+        randomize(mat.flat, mat.offset, mat.offset + mat.size(), low, high);
+    }
+
+    // How many genes in a row don't mutate
+    private long skip(double logMiss) {
+        // 1 - nextDouble() is never 0, so the log is always finite
+        double skip = Math.floor(Math.log(1 - random.nextDouble()) / logMiss);
+        return skip < Integer.MAX_VALUE ? (long) skip : Integer.MAX_VALUE;
+    }
+}
@@ -1,6 +1,7 @@
 package flappybirdneuroevolution;
 
 import flappybirdneuroevolution.Mat.MatFunc;
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -9,8 +10,8 @@ import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
+import java.util.Arrays;
 import java.util.Random;
-import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * This class is used to create new Neural Networks, configure them
@@ -46,6 +47,19 @@ public class NeuralNetwork implements Cloneable {
      * The biases that each layer has
      */
     public final Mat[] biases;
+    /**
+     * Every weight and then every bias, in the order they're saved in.
+     * The matrices in {@link #weights} and {@link #biases} are views
+     * into this array, so it's what crossover and mutation work on.
+     * The array can be shared with other networks, see
+     * {@link #genomeOffset}.
+     */
+    public final double[] genome;
+    /**
+     * Where this network's genes start in {@link #genome}, it has
+     * {@link #genomeSize()} of them
+     */
+    public final int genomeOffset;
     /**
      * This is beyond me and I suggest you google it
      */
@@ -56,6 +70,22 @@ public class NeuralNetwork implements Cloneable {
      * back in the learning process.
      */
     private double learningRate;
+    /**
+     * When on, {@link #process(double[], double[])} warns about inputs
+     * that don't look normalized. Off by default since it's a scan and
+     * a print on every call.
+     */
+    private boolean diagnostics;
+    /**
+     * Reusable per-layer outputs for the forward pass, so processing
+     * doesn't allocate. This makes a single network unsafe to process
+     * from more than one thread at a time, but every bird owns its own.
+     */
+    private final double[][] scratch;
+    /**
+     * Made by {@link #getTrainer()} when the network is first trained
+     */
+    private Trainer trainer;
 
     /**
      * This creates a new randomized neural network with one hidden
@@ -70,37 +100,42 @@ public class NeuralNetwork implements Cloneable {
     }
 
     public NeuralNetwork(int inputNodes, int hiddenLayers, int hiddenNodes, int outputNodes) {
-        this.inputNodes = inputNodes;
-        this.hiddenLayers = hiddenLayers;
-        this.hiddenNodes = hiddenNodes;
-        this.outputNodes = outputNodes;
+        this(inputNodes, hiddenLayers, hiddenNodes, outputNodes,
+                new double[genomeSize(inputNodes, hiddenLayers, hiddenNodes, outputNodes)], 0);
 
-        weights = new Mat[hiddenLayers + 1];
         for (int i = 0; i < hiddenLayers + 1; i++) {
-            if (i == 0) {
-                weights[i] = new Mat(hiddenNodes, inputNodes);
-            } else if (i == hiddenLayers) {
-                weights[i] = new Mat(outputNodes, hiddenNodes);
-            } else {
-                weights[i] = new Mat(hiddenNodes, hiddenNodes);
-            }
-
             weights[i].randomize();
         }
-
-        biases = new Mat[hiddenLayers + 1];
         for (int i = 0; i < hiddenLayers + 1; i++) {
-            if (i == hiddenLayers) {
-                biases[i] = new Mat(outputNodes, 1);
-            } else {
-                biases[i] = new Mat(hiddenNodes, 1);
-            }
-
             biases[i].randomize();
         }
+    }
+
+    /**
+     * This creates a network whose weights and biases are the genes
+     * already in the given array, starting at the given offset. Nothing
+     * gets copied or randomized, so many networks can share one big
+     * array (see {@link GenomeArena}).
+     *
+     * @param genome The array holding the genes
+     * @param genomeOffset Where this network's genes start
+     */
+    public NeuralNetwork(int inputNodes, int hiddenLayers, int hiddenNodes, int outputNodes,
+            double[] genome, int genomeOffset) {
+        this.inputNodes = inputNodes;
+        this.hiddenLayers = hiddenLayers;
+        this.hiddenNodes = hiddenNodes;
+        this.outputNodes = outputNodes;
+
+        this.genome = genome;
+        this.genomeOffset = genomeOffset;
+        weights = new Mat[hiddenLayers + 1];
+        biases = new Mat[hiddenLayers + 1];
+        createViews();
 
         learningRate = 0.01;
-        activationFunction = new ActivationFunction(Mat.SIGMOID, Mat.SIGMOID_DERIVATIVE);
+        activationFunction = Activations.function(Activations.SIGMOID);
+        scratch = createScratch();
     }
 
     public NeuralNetwork(NeuralNetwork copy) {
@@ -109,76 +144,159 @@ public class NeuralNetwork implements Cloneable {
         this.hiddenNodes = copy.hiddenNodes;
         this.outputNodes = copy.outputNodes;
 
+        genome = Arrays.copyOfRange(copy.genome, copy.genomeOffset, copy.genomeOffset + copy.genomeSize());
+        genomeOffset = 0;
         weights = new Mat[copy.weights.length];
-        for (int i = 0; i < weights.length; i++) {
-            weights[i] = copy.weights[i].clone();
-        }
-
         biases = new Mat[copy.biases.length];
-        for (int i = 0; i < biases.length; i++) {
-            biases[i] = copy.biases[i].clone();
-        }
+        createViews();
+
         learningRate = copy.learningRate;
         activationFunction = copy.activationFunction;
+        diagnostics = copy.diagnostics;
+        scratch = createScratch();
     }
 
-    public double[] process(double[] inputArray) {
-        if (inputArray.length != inputNodes) {
-            throw new IllegalArgumentException("Input must have " + inputNodes + " element" + (inputNodes == 1 ? "" : "s"));
+    /**
+     * @return How many weights and biases a network of this shape has
+     */
+    public static int genomeSize(int inputNodes, int hiddenLayers, int hiddenNodes, int outputNodes) {
+        int size = 0;
+        for (int i = 0; i < hiddenLayers + 1; i++) {
+            int rows = i == hiddenLayers ? outputNodes : hiddenNodes;
+            int cols = i == 0 ? inputNodes : hiddenNodes;
+            size += rows * cols + rows;
         }
+        return size;
+    }
+
+    public int genomeSize() {
+        return genomeSize(inputNodes, hiddenLayers, hiddenNodes, outputNodes);
+    }
 
-        for (int i = 0; i < inputNodes; i++) {
-            if (Math.abs(inputArray[i]) > 2) {
-                System.err.println("Index " + i + " is a bit too out-there");
+    // Lays the weights and then the biases of each layer over the genome
+    private void createViews() {
+        int offset = genomeOffset;
+        for (int i = 0; i < hiddenLayers + 1; i++) {
+            if (i == 0) {
+                weights[i] = new Mat(genome, offset, hiddenNodes, inputNodes);
+            } else if (i == hiddenLayers) {
+                weights[i] = new Mat(genome, offset, outputNodes, hiddenNodes);
+            } else {
+                weights[i] = new Mat(genome, offset, hiddenNodes, hiddenNodes);
             }
+            offset += weights[i].size();
         }
 
-        Mat input = Mat.fromArray(inputArray);
+        for (int i = 0; i < hiddenLayers + 1; i++) {
+            if (i == hiddenLayers) {
+                biases[i] = new Mat(genome, offset, outputNodes, 1);
+            } else {
+                biases[i] = new Mat(genome, offset, hiddenNodes, 1);
+            }
+            offset += biases[i].size();
+        }
+    }
 
-        for (int i = 1; i < hiddenLayers + 2; i++) {
-            input = weights[i - 1].mult(input).add(biases[i - 1]).map(activationFunction.function);
+    private double[][] createScratch() {
+        // The last layer writes straight into the caller's output
+        double[][] buffers = new double[hiddenLayers][];
+        for (int i = 0; i < hiddenLayers; i++) {
+            buffers[i] = new double[hiddenNodes];
         }
+        return buffers;
+    }
 
-        return input.toArray();
+    public double[] process(double[] inputArray) {
+        return process(inputArray, new double[outputNodes]);
     }
 
-    public void train(double[] inputArray, double[] correct) {
+    /**
+     * Runs the network forward and writes the result into the given
+     * output array. Each layer is one fused pass of matrix-vector
+     * multiply, bias and activation over the network's own scratch
+     * buffers, so nothing gets allocated.
+     *
+     * @param inputArray The inputs, must have inputNodes elements
+     * @param output Where the outputs go, must have outputNodes elements
+     *
+     * @return output
+     */
+    public double[] process(double[] inputArray, double[] output) {
         if (inputArray.length != inputNodes) {
             throw new IllegalArgumentException("Input must have " + inputNodes + " element" + (inputNodes == 1 ? "" : "s"));
         }
-        if (correct.length != outputNodes) {
+        if (output.length != outputNodes) {
             throw new IllegalArgumentException("Output must have " + outputNodes + " element" + (outputNodes == 1 ? "" : "s"));
         }
 
-        Mat input = Mat.fromArray(inputArray);
-        Mat[] layers = new Mat[hiddenLayers + 2];
-        layers[0] = input;
+        if (diagnostics) {
+            for (int i = 0; i < inputNodes; i++) {
+                if (Math.abs(inputArray[i]) > 2) {
+                    System.err.println("Index " + i + " is a bit too out-there");
+                }
+            }
+        }
 
-        for (int i = 1; i < hiddenLayers + 2; i++) {
-            input = weights[i - 1].mult(input).add(biases[i - 1]).map(activationFunction.function);
-            layers[i] = input;
+        double[] input = inputArray;
+        for (int i = 0; i < hiddenLayers + 1; i++) {
+            double[] out = i == hiddenLayers ? output : scratch[i];
+            forwardLayer(weights[i], biases[i], input, out, activationFunction.kernel);
+            input = out;
         }
 
-        Mat target = Mat.fromArray(correct);
-        for (int i = hiddenLayers + 1; i > 0; i--) {
-            // Calculate Error
-            Mat error = target.subtract(layers[i]);
+        return output;
+    }
 
-            // Calculate Gradient
-            Mat gradient = layers[i].map(activationFunction.derivative);
-            gradient = gradient.elementMult(error);
-            gradient = gradient.mult(learningRate);
+    // out = f(w * in + b), the sums one row at a time and then the
+    // activation over the whole layer at once
+    static void forwardLayer(Mat w, Mat b, double[] in, double[] out, ActivationKernel f) {
+        final double[] wf = w.flat;
+        final double[] bf = b.flat;
+        final int cols = w.cols;
+
+        for (int r = 0; r < w.rows; r++) {
+            int row = w.offset + r * cols;
+            double sum = bf[b.offset + r];
+            for (int c = 0; c < cols; c++) {
+                sum += wf[row + c] * in[c];
+            }
+            out[r] = sum;
+        }
+        f.apply(out, 0, w.rows);
+    }
 
-            // Calculate Delta
-            Mat delta = gradient.mult(layers[i - 1].transpose());
+    /**
+     * One step of backpropagation on a single sample. The weights and
+     * biases are updated in place through this network's {@link Trainer},
+     * so training doesn't allocate.
+     *
+     * @param inputArray The inputs, must have inputNodes elements
+     * @param correct What the outputs should have been
+     */
+    public void train(double[] inputArray, double[] correct) {
+        getTrainer().train(inputArray, correct);
+    }
 
-            // Adjust weights and biases
-            biases[i - 1] = biases[i - 1].add(gradient);
-            weights[i - 1] = weights[i - 1].add(delta);
+    /**
+     * One step of backpropagation over a mini-batch, with the gradients
+     * of every sample averaged together.
+     *
+     * @see Trainer#train(double[][], double[][], int, int)
+     */
+    public void train(double[][] inputs, double[][] correct) {
+        getTrainer().train(inputs, correct);
+    }
 
-            // Reset target for next loop
-            target = weights[i - 1].transpose().mult(error).add(layers[i - 1]);
+    /**
+     * The buffers used by {@link #train(double[], double[])}, made the
+     * first time they're needed since most networks are never trained.
+     * Copies get their own.
+     */
+    public Trainer getTrainer() {
+        if (trainer == null) {
+            trainer = new Trainer(this);
         }
+        return trainer;
     }
 
     public double getLearningRate() {
@@ -190,6 +308,15 @@ public class NeuralNetwork implements Cloneable {
         return this;
     }
 
+    public boolean isDiagnostics() {
+        return diagnostics;
+    }
+
+    public NeuralNetwork setDiagnostics(boolean diagnostics) {
+        this.diagnostics = diagnostics;
+        return this;
+    }
+
     public ActivationFunction getActivationFunction() {
         return activationFunction;
     }
@@ -199,59 +326,94 @@ public class NeuralNetwork implements Cloneable {
         return this;
     }
 
-    public NeuralNetwork quoteBreedUnquote(final NeuralNetwork other) {
-        if (inputNodes != other.inputNodes || hiddenLayers != other.hiddenLayers || hiddenNodes != other.hiddenNodes || outputNodes != other.outputNodes) {
-            throw new IllegalArgumentException("These neural networks aren't compatible");
-        }
-
-        NeuralNetwork nn = clone();
-        for (int i = 0; i < hiddenLayers + 1; i++) {
-            Mat weight = nn.weights[i];
+    public NeuralNetwork quoteBreedUnquote(NeuralNetwork other) {
+        return quoteBreedUnquote(other, Mutator.current());
+    }
 
-            final int indx = i;
-            weight.map(new MatFunc() {
-                @Override
-                public double perform(double val, int r, int c) {
-                    return Math.random() >= 0.5 ? val : other.weights[indx].data[r][c];
-                }
-            });
+    /**
+     * A child that takes every weight and bias from either this network
+     * or the other one, with even odds.
+     *
+     * @param other The other parent
+     * @param mutator Where the coin flips come from
+     *
+     * @return The child
+     */
+    public NeuralNetwork quoteBreedUnquote(NeuralNetwork other, Mutator mutator) {
+        return crossover(other, Crossover.UNIFORM, mutator);
+    }
 
-            Mat bias = nn.biases[i];
+    /**
+     * A child mixed from this network's and the other network's genomes.
+     *
+     * @param other The other parent, must be the same shape
+     * @param crossover How the genomes are mixed
+     * @param mutator Where the random numbers come from
+     *
+     * @return The child, which copies everything else from this network
+     */
+    public NeuralNetwork crossover(NeuralNetwork other, Crossover crossover, Mutator mutator) {
+        return crossover(other, clone(), crossover, mutator);
+    }
 
-            final int index = i;
-            bias.map(new MatFunc() {
-                @Override
-                public double perform(double val, int r, int c) {
-                    return Math.random() >= 0.5 ? val : other.biases[index].data[r][c];
-                }
-            });
+    /**
+     * Same as {@link #crossover(NeuralNetwork, Crossover, Mutator)}, but
+     * the genes are written over an existing child's.
+     *
+     * @return child
+     */
+    public NeuralNetwork crossover(NeuralNetwork other, NeuralNetwork child, Crossover crossover, Mutator mutator) {
+        if (inputNodes != other.inputNodes || hiddenLayers != other.hiddenLayers || hiddenNodes != other.hiddenNodes || outputNodes != other.outputNodes
+                || inputNodes != child.inputNodes || hiddenLayers != child.hiddenLayers || hiddenNodes != child.hiddenNodes || outputNodes != child.outputNodes) {
+            throw new IllegalArgumentException("These neural networks aren't compatible");
         }
-        return nn;
+
+        crossover.cross(genome, genomeOffset, other.genome, other.genomeOffset,
+                child.genome, child.genomeOffset, genomeSize(), mutator.getRandom());
+        return child;
     }
 
     public NeuralNetwork randomizeBoth() {
+        return randomizeBoth(Mutator.current());
+    }
+
+    /**
+     * Sets every weight and bias to a random value between -1 and 1
+     *
+     * @param mutator Where the random values come from
+     *
+     * @return this
+     */
+    public NeuralNetwork randomizeBoth(Mutator mutator) {
         for (int i = 0; i < weights.length; i++) {
-            weights[i].map(new MatFunc() {
-                @Override
-                public double perform(double val, int r, int c) {
-                    return Math.random() * 2 - 1;
-                }
-            });
+            mutator.randomize(weights[i], -1, 1);
         }
 
         for (int i = 0; i < biases.length; i++) {
-            biases[i].map(new MatFunc() {
-                @Override
-                public double perform(double val, int r, int c) {
-                    return Math.random() * 2 - 1;
-                }
-            });
+            mutator.randomize(biases[i], -1, 1);
         }
         return this;
     }
 
     public NeuralNetwork mutateWeights(double chance) {
-        return mutateWeights(chance, ThreadLocalRandom.current());
+        return mutateWeights(chance, Mutator.current());
+    }
+
+    /**
+     * Nudges each weight by up to 0.1 either way with the given chance.
+     * Only the weights that mutate cost a random number, see
+     * {@link Mutator#mutate(double[], int, int, double, double, double)}.
+     *
+     * @param chance The chance of each weight mutating
+     * @param mutator Where the random values come from
+     *
+     * @return this
+     */
+    public NeuralNetwork mutateWeights(double chance, Mutator mutator) {
+        for (int i = 0; i < weights.length; i++) {
+            mutator.mutate(weights[i], chance, -0.1, 0.1);
+        }
+        return this;
     }
 
     public NeuralNetwork mutateWeights(final double chance, final Random rand) {
@@ -267,7 +429,22 @@ public class NeuralNetwork implements Cloneable {
     }
 
     public NeuralNetwork mutateBiases(double chance) {
-        return mutateBiases(chance, ThreadLocalRandom.current());
+        return mutateBiases(chance, Mutator.current());
+    }
+
+    /**
+     * Nudges each bias by up to 1.5 either way with the given chance.
+     *
+     * @param chance The chance of each bias mutating
+     * @param mutator Where the random values come from
+     *
+     * @return this
+     */
+    public NeuralNetwork mutateBiases(double chance, Mutator mutator) {
+        for (int i = 0; i < biases.length; i++) {
+            mutator.mutate(biases[i], chance, -1.5, 1.5);
+        }
+        return this;
     }
 
     public NeuralNetwork mutateBiases(final double chance, final Random rand) {
@@ -287,71 +464,163 @@ public class NeuralNetwork implements Cloneable {
         return new NeuralNetwork(this);
     }
 
+    // What a saved brain starts with, followed by how many bytes each of
+    // its values takes. Brains saved before this was added have no header
+    // and are all doubles. They start with an ObjectOutputStream's 0xACED,
+    // so they can't be mistaken for one
+    private static final byte[] FILE_HEADER = {'F', 'B', 'N', 'N'};
+
     public void writeTo(File file) throws Exception {
+        writeTo(file, Precision.DOUBLE);
+    }
+
+    public void writeTo(File file, Precision precision) throws Exception {
         FileOutputStream fout = new FileOutputStream(file);
-        writeTo(fout);
+        writeTo(fout, precision);
         fout.close();
     }
 
     public void writeTo(OutputStream out) throws IOException {
+        writeTo(out, Precision.DOUBLE);
+    }
+
+    /**
+     * Writes a header saying which precision is used, then every weight
+     * and then every bias. {@link #readFrom(InputStream)} reads it back
+     * whatever the precision.
+     *
+     * @param out Where to write to, closed afterwards
+     * @param precision How many bits to keep of each value, anything
+     * below double loses some
+     */
+    public void writeTo(OutputStream out, Precision precision) throws IOException {
+        out.write(FILE_HEADER);
+        out.write(precision.bytes);
+
         ObjectOutputStream oout = new ObjectOutputStream(out);
         for (int i = 0; i < weights.length; i++) {
             Mat weight = weights[i];
 
-            for (int x = 0; x < weight.rows; x++) {
-                for (int y = 0; y < weight.cols; y++) {
-                    oout.writeDouble(weight.data[x][y]);
-                }
+            for (int x = 0; x < weight.size(); x++) {
+                precision.write(oout, weight.flat[weight.offset + x]);
             }
         }
         for (int i = 0; i < biases.length; i++) {
             Mat bias = biases[i];
 
-            for (int x = 0; x < bias.rows; x++) {
-                for (int y = 0; y < bias.cols; y++) {
-                    oout.writeDouble(bias.data[x][y]);
-                }
+            for (int x = 0; x < bias.size(); x++) {
+                precision.write(oout, bias.flat[bias.offset + x]);
             }
         }
         oout.close();
     }
 
     public void readFrom(File file) throws Exception {
+        readFrom(file, Precision.DOUBLE);
+    }
+
+    public void readFrom(File file, Precision precision) throws Exception {
         FileInputStream fin = new FileInputStream(file);
-        readFrom(fin);
+        readFrom(fin, precision);
         fin.close();
     }
 
     public void readFrom(InputStream in) throws IOException {
-        ObjectInputStream oin = new ObjectInputStream(in);
+        readFrom(in, Precision.DOUBLE);
+    }
+
+    /**
+     * Reads a brain written by {@link #writeTo(OutputStream, Precision)},
+     * in the precision its header gives.
+     *
+     * @param in Where to read from, closed afterwards
+     * @param precision What the values are stored in if there's no header,
+     * which is only the case for brains saved before there was one
+     */
+    public void readFrom(InputStream in, Precision precision) throws IOException {
+        BufferedInputStream bin = new BufferedInputStream(in);
+        precision = readHeader(bin, precision);
+
+        ObjectInputStream oin = new ObjectInputStream(bin);
         for (int i = 0; i < weights.length; i++) {
             Mat weight = weights[i];
 
-            for (int x = 0; x < weight.rows; x++) {
-                for (int y = 0; y < weight.cols; y++) {
-                    weight.data[x][y] = oin.readDouble();
-                }
+            for (int x = 0; x < weight.size(); x++) {
+                weight.flat[weight.offset + x] = precision.read(oin);
             }
         }
         for (int i = 0; i < biases.length; i++) {
             Mat bias = biases[i];
 
-            for (int x = 0; x < bias.rows; x++) {
-                for (int y = 0; y < bias.cols; y++) {
-                    bias.data[x][y] = oin.readDouble();
-                }
+            for (int x = 0; x < bias.size(); x++) {
+                bias.flat[bias.offset + x] = precision.read(oin);
             }
         }
         oin.close();
     }
 
+    // The precision a saved brain's header gives, or the given one if it
+    // has no header, in which case nothing is read
+    private static Precision readHeader(BufferedInputStream in, Precision noHeader) throws IOException {
+        in.mark(FILE_HEADER.length + 1);
+        for (byte b : FILE_HEADER) {
+            if (in.read() != b) {
+                in.reset();
+                return noHeader;
+            }
+        }
+
+        int bytes = in.read();
+        for (Precision p : Precision.values()) {
+            if (p.bytes == bytes) {
+                return p;
+            }
+        }
+        throw new IOException("The brain was saved with " + bytes + " bytes per value, which isn't a known precision");
+    }
+
     public static class ActivationFunction {
 
         public final MatFunc function, derivative;
+        /**
+         * The same function for whole layers at a time, which is what
+         * {@link #process(double[], double[])} uses
+         */
+        public final ActivationKernel kernel;
 
-        public ActivationFunction(MatFunc function, MatFunc derivative) {
+        public ActivationFunction(final MatFunc function, final MatFunc derivative) {
             this.function = function;
             this.derivative = derivative;
+            this.kernel = new ActivationKernel() {
+                @Override
+                public double apply(double x) {
+                    return function.perform(x, 0, 0);
+                }
+
+                @Override
+                public double derivative(double y) {
+                    return derivative.perform(y, 0, 0);
+                }
+            };
+        }
+
+        /**
+         * Wraps a kernel, usually one from {@link Activations}
+         */
+        public ActivationFunction(final ActivationKernel kernel) {
+            this.kernel = kernel;
+            this.function = new MatFunc() {
+                @Override
+                public double perform(double val, int r, int c) {
+                    return kernel.apply(val);
+                }
+            };
+            this.derivative = new MatFunc() {
+                @Override
+                public double perform(double val, int r, int c) {
+                    return kernel.derivative(val);
+                }
+            };
         }
     }
 }
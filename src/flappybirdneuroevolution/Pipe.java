@@ -0,0 +1,56 @@
+package flappybirdneuroevolution;
+
+/**
+ *
+ * @author Preston Tang
+ *
+ * The data behind a pair of top and bottom pipes, PipeGroup draws it.
+ * Pipes are reused by PipeRing, so they're set up through set()
+ *
+ */
+public class Pipe {
+
+    private double x;
+    private double top, bottom;
+    private double gap;
+    private double width;
+    private double updateAmount;
+
+    // Places the pipe at x with its opening between top and top + gap
+    public void set(double x, double top, double gap, double width, double updateAmount) {
+        this.x = x;
+        this.top = top;
+        this.bottom = top + gap;
+        this.gap = gap;
+        this.width = width;
+        this.updateAmount = updateAmount;
+    }
+
+    public void update() {
+        x -= updateAmount;
+    }
+
+    public double getX() {
+        return x;
+    }
+
+    public void setX(double x) {
+        this.x = x;
+    }
+
+    public double getTop() {
+        return top;
+    }
+
+    public double getBottom() {
+        return bottom;
+    }
+
+    public double getWidth() {
+        return width;
+    }
+
+    public double getGap() {
+        return gap;
+    }
+}
@@ -0,0 +1,100 @@
+package flappybirdneuroevolution;
+
+/**
+ *
+ * @author Preston Tang
+ *
+ * Everything the birds need to know about the pipes for one tick. All
+ * birds share the same x position, so the closest pipe is the same for
+ * every one of them and only has to be found once per tick
+ *
+ */
+public class PipeContext {
+
+    private Pipe pipe;
+
+    // The pipe's top and bottom already divided by the game height,
+    // ready to be fed to the brains
+    private double topInput, bottomInput;
+
+    // Where the pipe starts and ends on the x axis
+    private double left, right;
+
+    // Where the opening starts and ends on the y axis
+    private double top, bottom;
+
+    // Multiply by this instead of dividing by the game height
+    private double inverseHeight;
+
+    // Finds the closest pipe that the birds at x haven't passed yet
+    public void update(PipeRing pipes, double x, double gameHeight) {
+        Pipe closest = null;
+
+        double dist = Double.MAX_VALUE;
+
+        for (int i = 0; i < pipes.size(); i++) {
+            Pipe p = pipes.get(i);
+
+            if (p.getX() + p.getWidth() > x
+                    && p.getX() - x < dist) {
+                closest = p;
+                dist = p.getX() - x;
+            }
+        }
+
+        pipe = closest;
+        inverseHeight = 1 / gameHeight;
+        top = closest.getTop();
+        bottom = closest.getBottom();
+        topInput = closest.getTop() * inverseHeight;
+        bottomInput = closest.getBottom() * inverseHeight;
+        left = closest.getX();
+        right = closest.getX() + closest.getWidth();
+    }
+
+    // Whether the pipe is over any part of a bird at x, edges touching count
+    public boolean overlaps(double x, double size) {
+        return left <= x + size && right >= x;
+    }
+
+    /**
+     * Whether a bird at y is outside the opening. This only makes sense
+     * when {@link #overlaps(double, double)} is true, and assumes the
+     * bird is inside the game, which is checked separately anyway.
+     */
+    public boolean hitsPipe(double y, double size) {
+        return y <= top || y + size >= bottom;
+    }
+
+    public Pipe getPipe() {
+        return pipe;
+    }
+
+    public double getTopInput() {
+        return topInput;
+    }
+
+    public double getBottomInput() {
+        return bottomInput;
+    }
+
+    public double getLeft() {
+        return left;
+    }
+
+    public double getRight() {
+        return right;
+    }
+
+    public double getTop() {
+        return top;
+    }
+
+    public double getBottom() {
+        return bottom;
+    }
+
+    public double getInverseHeight() {
+        return inverseHeight;
+    }
+}
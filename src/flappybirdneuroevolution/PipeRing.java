@@ -0,0 +1,67 @@
+package flappybirdneuroevolution;
+
+/**
+ *
+ * @author Preston Tang
+ *
+ * The pipes currently in the game, oldest first. The Pipe objects are
+ * created once up front and recycled, a pipe leaving the screen on the
+ * left frees its slot for the next one coming in on the right
+ *
+ */
+public class PipeRing {
+
+    private final Pipe[] slots;
+
+    // Index of the oldest pipe and how many pipes are in use
+    private int head, size;
+
+    public PipeRing(int capacity) {
+        slots = new Pipe[capacity];
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new Pipe();
+        }
+    }
+
+    // The ith pipe, 0 being the oldest (leftmost) one
+    public Pipe get(int i) {
+        int index = head + i;
+        return slots[index < slots.length ? index : index - slots.length];
+    }
+
+    public Pipe getFirst() {
+        return get(0);
+    }
+
+    public Pipe getLast() {
+        return get(size - 1);
+    }
+
+    // Hands out the next free pipe, the caller sets it up
+    public Pipe addLast() {
+        if (size == slots.length) {
+            throw new IllegalStateException("There are already " + size + " pipes");
+        }
+
+        size++;
+        return getLast();
+    }
+
+    public void removeFirst() {
+        head = head + 1 < slots.length ? head + 1 : 0;
+        size--;
+    }
+
+    public void clear() {
+        head = 0;
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+}
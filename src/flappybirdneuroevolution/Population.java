@@ -0,0 +1,225 @@
+package flappybirdneuroevolution;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ *
+ * @author Preston Tang
+ *
+ * The live birds of a generation, kept as plain arrays instead of a list
+ * of objects. Slot i of every array belongs to the same bird, and slots
+ * 0 to size() - 1 are always the ones still flying. A dead bird is
+ * swapped with the last live one, so removing it doesn't shift anything.
+ *
+ * Everything all the birds share (x position, size, jump strength) is
+ * stored once.
+ *
+ */
+public class Population {
+
+    // These are values I find tuned through trial and error
+    private static final double MAX_FALL_SPEED = 5;
+    private static final double MAX_RISE_SPEED = -12.5;
+
+    private final int capacity;
+    private final double x;
+    private final double birdSize;
+    private final double jumpStrength;
+
+    private final double[] y;
+    private final double[] velocity;
+    private final double[] score;
+    private final boolean[] alive;
+
+    // Whatever number the bird was added with, for telling apart birds
+    // that play different games in the same population
+    private final int[] tag;
+
+    // Which bird is in each slot, only touched when birds come or go
+    private final Bird[] birds;
+
+    private final PopulationBrain brain;
+
+    private int size;
+
+    public Population(int capacity, double x, double birdSize, double jumpStrength,
+            ActivationKernel activation, Precision precision) {
+        this.capacity = capacity;
+        this.x = x;
+        this.birdSize = birdSize;
+        this.jumpStrength = jumpStrength;
+
+        y = new double[capacity];
+        velocity = new double[capacity];
+        score = new double[capacity];
+        alive = new boolean[capacity];
+        tag = new int[capacity];
+        birds = new Bird[capacity];
+
+        brain = new PopulationBrain(4, 1, 3, 2, capacity, activation, precision);
+    }
+
+    // Puts a bird in the next free slot, starting where the bird currently is
+    public void add(Bird b, double startScore) {
+        add(b, startScore, 0);
+    }
+
+    // Like add(Bird, double), the tag stays with the bird until it's removed
+    public void add(Bird b, double startScore, int tag) {
+        if (size == capacity) {
+            throw new IllegalStateException("The population is full");
+        }
+
+        int i = size++;
+        birds[i] = b;
+        y[i] = b.getY();
+        velocity[i] = b.getYVelocity();
+        score[i] = startScore;
+        alive[i] = true;
+        this.tag[i] = tag;
+        brain.load(i, b.getBrain());
+    }
+
+    // Copies the brain of the bird in slot i in again after it changed
+    public void reload(int i) {
+        brain.load(i, birds[i].getBrain());
+    }
+
+    // Applies gravity to the birds in slots from to to - 1 and moves them
+    public void step(int from, int to, double gravity) {
+        final double[] y = this.y, velocity = this.velocity, score = this.score;
+
+        for (int i = from; i < to; i++) {
+            double v = Math.max(MAX_RISE_SPEED, Math.min(MAX_FALL_SPEED, velocity[i] + gravity));
+            velocity[i] = v;
+            y[i] += v;
+            score[i] += 1;
+        }
+    }
+
+    // Normalized inputs, the same ones Bird.action uses
+    public void writeInputs(int i, PipeContext context) {
+        brain.setInput(i, 0, context.getTopInput());
+        brain.setInput(i, 1, context.getBottomInput());
+        brain.setInput(i, 2, (y[i] + (birdSize / 2)) * context.getInverseHeight());
+        brain.setInput(i, 3, velocity[i] * (1 / 12.5));
+    }
+
+    // The birds in slots from to to - 1 decide whether to jump, all in one batch
+    public void think(int from, int to) {
+        brain.evaluate(from, to);
+
+        for (int i = from; i < to; i++) {
+            boolean jump = brain.getOutput(i, 0) > brain.getOutput(i, 1);
+            velocity[i] = jump ? -jumpStrength : velocity[i];
+        }
+    }
+
+    // Safe to call from several threads as long as they use different slots
+    public void kill(int i) {
+        alive[i] = false;
+    }
+
+    // Marks every bird that has reached the given score as dead
+    public void killFrom(double limit) {
+        for (int i = 0; i < size; i++) {
+            if (score[i] >= limit) {
+                alive[i] = false;
+            }
+        }
+    }
+
+    /**
+     * Takes every bird marked as dead out of the live slots and adds it
+     * to the given list. Each death costs one swap with the last live
+     * slot, no matter how many birds die at once.
+     */
+    public void removeDead(List<Bird> dead) {
+        // Going backwards means the bird swapped in has already been checked
+        for (int i = size - 1; i >= 0; i--) {
+            if (!alive[i]) {
+                dead.add(retire(i));
+
+                size--;
+                if (i != size) {
+                    move(size, i);
+                }
+            }
+        }
+    }
+
+    // Forgets every bird without writing anything back
+    public void clear() {
+        Arrays.fill(birds, 0, size, null);
+        size = 0;
+    }
+
+    // Takes every bird out, dead or alive
+    public void removeAll(List<Bird> out) {
+        for (int i = 0; i < size; i++) {
+            out.add(retire(i));
+        }
+        size = 0;
+    }
+
+    // Writes the slot's state back into its bird and frees the slot
+    private Bird retire(int i) {
+        Bird b = birds[i];
+        b.setY(y[i]);
+        b.setYVelocity(velocity[i]);
+        b.setScore(score[i]);
+        b.setAlive(alive[i]);
+        birds[i] = null;
+        return b;
+    }
+
+    private void move(int from, int to) {
+        birds[to] = birds[from];
+        y[to] = y[from];
+        velocity[to] = velocity[from];
+        score[to] = score[from];
+        alive[to] = alive[from];
+        tag[to] = tag[from];
+        birds[from] = null;
+        brain.move(from, to);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public Bird getBird(int i) {
+        return birds[i];
+    }
+
+    public double getX() {
+        return x;
+    }
+
+    public double getY(int i) {
+        return y[i];
+    }
+
+    public int getTag(int i) {
+        return tag[i];
+    }
+
+    // The score of a bird still flying, ticks since it was added plus
+    // whatever it started with
+    public double getScore(int i) {
+        return score[i];
+    }
+
+    public double getBirdSize() {
+        return birdSize;
+    }
+}
@@ -0,0 +1,256 @@
+package flappybirdneuroevolution;
+
+/**
+ * Evaluates a whole population of same-shaped neural networks at once.
+ *
+ * Instead of one {@link NeuralNetwork} object per bird, every weight and
+ * bias of every bird is stacked into one array per layer, laid out as
+ * layer x neuron x bird (the bird index changes fastest). A forward pass
+ * is then a handful of tight loops that run across all birds in a row,
+ * which is much friendlier to the cache and the JIT than calling process
+ * on a thousand separate networks.
+ *
+ * Birds are identified by their slot in the batch. Inputs are written per
+ * slot, {@link #evaluate(int, int)} runs a range of slots, and the outputs
+ * are then read back per slot.
+ *
+ * At {@link Precision#FLOAT} or below, everything is kept and computed in
+ * floats instead, which halves the memory a forward pass goes through.
+ * {@link Precision#HALF} also rounds every weight to a half as it's
+ * loaded, to see how a brain stored that way would behave.
+ *
+ * @author Preston Tang
+ */
+public class PopulationBrain {
+
+    public final int inputNodes;
+    public final int hiddenLayers;
+    public final int hiddenNodes;
+    public final int outputNodes;
+
+    // How many birds fit in the batch
+    private final int capacity;
+
+    // Rows (neurons) and columns (inputs) of each layer's weight matrix
+    private final int[] layerRows, layerCols;
+
+    // weights[l][(r * cols + c) * capacity + bird]
+    private final double[][] weights;
+    // biases[l][r * capacity + bird]
+    private final double[][] biases;
+    // values[0] holds the inputs, values[l + 1] holds the output of layer l
+    // values[l][node * capacity + bird]
+    private final double[][] values;
+
+    // The same arrays in floats, only one of the two sets is ever made
+    private final float[][] floatWeights, floatBiases, floatValues;
+
+    private final ActivationKernel activation;
+    private final Precision precision;
+
+    public PopulationBrain(int inputNodes, int hiddenLayers, int hiddenNodes, int outputNodes,
+            int capacity, ActivationKernel activation) {
+        this(inputNodes, hiddenLayers, hiddenNodes, outputNodes, capacity, activation, Precision.DOUBLE);
+    }
+
+    public PopulationBrain(int inputNodes, int hiddenLayers, int hiddenNodes, int outputNodes,
+            int capacity, ActivationKernel activation, Precision precision) {
+        this.inputNodes = inputNodes;
+        this.hiddenLayers = hiddenLayers;
+        this.hiddenNodes = hiddenNodes;
+        this.outputNodes = outputNodes;
+        this.capacity = capacity;
+        this.activation = activation;
+        this.precision = precision;
+
+        int layers = hiddenLayers + 1;
+        layerRows = new int[layers];
+        layerCols = new int[layers];
+        for (int l = 0; l < layers; l++) {
+            layerRows[l] = l == hiddenLayers ? outputNodes : hiddenNodes;
+            layerCols[l] = l == 0 ? inputNodes : hiddenNodes;
+        }
+
+        if (precision == Precision.DOUBLE) {
+            weights = new double[layers][];
+            biases = new double[layers][];
+            values = new double[layers + 1][];
+            floatWeights = floatBiases = floatValues = null;
+
+            values[0] = new double[inputNodes * capacity];
+            for (int l = 0; l < layers; l++) {
+                weights[l] = new double[layerRows[l] * layerCols[l] * capacity];
+                biases[l] = new double[layerRows[l] * capacity];
+                values[l + 1] = new double[layerRows[l] * capacity];
+            }
+        } else {
+            floatWeights = new float[layers][];
+            floatBiases = new float[layers][];
+            floatValues = new float[layers + 1][];
+            weights = biases = values = null;
+
+            floatValues[0] = new float[inputNodes * capacity];
+            for (int l = 0; l < layers; l++) {
+                floatWeights[l] = new float[layerRows[l] * layerCols[l] * capacity];
+                floatBiases[l] = new float[layerRows[l] * capacity];
+                floatValues[l + 1] = new float[layerRows[l] * capacity];
+            }
+        }
+    }
+
+    public Precision getPrecision() {
+        return precision;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    // Copies a network's weights and biases into the given slot
+    public void load(int slot, NeuralNetwork nn) {
+        if (nn.inputNodes != inputNodes || nn.hiddenLayers != hiddenLayers
+                || nn.hiddenNodes != hiddenNodes || nn.outputNodes != outputNodes) {
+            throw new IllegalArgumentException("This neural network isn't compatible with the batch");
+        }
+
+        if (precision != Precision.DOUBLE) {
+            loadFloats(slot, nn);
+            return;
+        }
+
+        for (int l = 0; l < weights.length; l++) {
+            Mat w = nn.weights[l];
+            for (int i = 0; i < w.size(); i++) {
+                weights[l][i * capacity + slot] = w.flat[w.offset + i];
+            }
+
+            Mat b = nn.biases[l];
+            for (int i = 0; i < b.size(); i++) {
+                biases[l][i * capacity + slot] = b.flat[b.offset + i];
+            }
+        }
+    }
+
+    private void loadFloats(int slot, NeuralNetwork nn) {
+        for (int l = 0; l < floatWeights.length; l++) {
+            Mat w = nn.weights[l];
+            for (int i = 0; i < w.size(); i++) {
+                floatWeights[l][i * capacity + slot] = (float) precision.round(w.flat[w.offset + i]);
+            }
+
+            Mat b = nn.biases[l];
+            for (int i = 0; i < b.size(); i++) {
+                floatBiases[l][i * capacity + slot] = (float) precision.round(b.flat[b.offset + i]);
+            }
+        }
+    }
+
+    // Copies a slot's weights and biases over another slot
+    public void move(int from, int to) {
+        if (precision != Precision.DOUBLE) {
+            for (int l = 0; l < floatWeights.length; l++) {
+                final float[] w = floatWeights[l];
+                for (int i = 0; i < w.length; i += capacity) {
+                    w[i + to] = w[i + from];
+                }
+
+                final float[] b = floatBiases[l];
+                for (int i = 0; i < b.length; i += capacity) {
+                    b[i + to] = b[i + from];
+                }
+            }
+            return;
+        }
+
+        for (int l = 0; l < weights.length; l++) {
+            final double[] w = weights[l];
+            for (int i = 0; i < w.length; i += capacity) {
+                w[i + to] = w[i + from];
+            }
+
+            final double[] b = biases[l];
+            for (int i = 0; i < b.length; i += capacity) {
+                b[i + to] = b[i + from];
+            }
+        }
+    }
+
+    public void setInput(int slot, int input, double value) {
+        if (values != null) {
+            values[0][input * capacity + slot] = value;
+        } else {
+            floatValues[0][input * capacity + slot] = (float) value;
+        }
+    }
+
+    public double getOutput(int slot, int output) {
+        if (values != null) {
+            return values[values.length - 1][output * capacity + slot];
+        }
+        return floatValues[floatValues.length - 1][output * capacity + slot];
+    }
+
+    /**
+     * Runs the forward pass for every slot from (inclusive) to
+     * (exclusive). Slots outside the range are left untouched, so
+     * disjoint ranges can be evaluated independently.
+     */
+    public void evaluate(int from, int to) {
+        if (precision != Precision.DOUBLE) {
+            evaluateFloats(from, to);
+            return;
+        }
+
+        for (int l = 0; l < weights.length; l++) {
+            final double[] w = weights[l];
+            final double[] b = biases[l];
+            final double[] in = values[l];
+            final double[] out = values[l + 1];
+            final int rows = layerRows[l];
+            final int cols = layerCols[l];
+
+            for (int r = 0; r < rows; r++) {
+                final int o = r * capacity;
+
+                // Start from the bias, then accumulate one input at a time
+                System.arraycopy(b, o + from, out, o + from, to - from);
+                for (int c = 0; c < cols; c++) {
+                    final int wi = (r * cols + c) * capacity;
+                    final int ii = c * capacity;
+                    for (int s = from; s < to; s++) {
+                        out[o + s] += w[wi + s] * in[ii + s];
+                    }
+                }
+
+                activation.apply(out, o + from, o + to);
+            }
+        }
+    }
+
+    // The same as evaluate, in floats
+    private void evaluateFloats(int from, int to) {
+        for (int l = 0; l < floatWeights.length; l++) {
+            final float[] w = floatWeights[l];
+            final float[] b = floatBiases[l];
+            final float[] in = floatValues[l];
+            final float[] out = floatValues[l + 1];
+            final int rows = layerRows[l];
+            final int cols = layerCols[l];
+
+            for (int r = 0; r < rows; r++) {
+                final int o = r * capacity;
+
+                System.arraycopy(b, o + from, out, o + from, to - from);
+                for (int c = 0; c < cols; c++) {
+                    final int wi = (r * cols + c) * capacity;
+                    final int ii = c * capacity;
+                    for (int s = from; s < to; s++) {
+                        out[o + s] += w[wi + s] * in[ii + s];
+                    }
+                }
+
+                activation.apply(out, o + from, o + to);
+            }
+        }
+    }
+}
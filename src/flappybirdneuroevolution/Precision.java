@@ -0,0 +1,81 @@
+package flappybirdneuroevolution;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ *
+ * @author Preston Tang
+ *
+ * How many bits each weight and bias is kept in. Doubles are what the
+ * networks always use, floats halve the memory and bandwidth of a big
+ * population, and halves are only good for storing brains since they keep
+ * about 3 digits
+ *
+ */
+public enum Precision {
+
+    DOUBLE(8) {
+        @Override
+        public void write(DataOutput out, double value) throws IOException {
+            out.writeDouble(value);
+        }
+
+        @Override
+        public double read(DataInput in) throws IOException {
+            return in.readDouble();
+        }
+
+        @Override
+        public double round(double value) {
+            return value;
+        }
+    },
+    FLOAT(4) {
+        @Override
+        public void write(DataOutput out, double value) throws IOException {
+            out.writeFloat((float) value);
+        }
+
+        @Override
+        public double read(DataInput in) throws IOException {
+            return in.readFloat();
+        }
+
+        @Override
+        public double round(double value) {
+            return (float) value;
+        }
+    },
+    HALF(2) {
+        @Override
+        public void write(DataOutput out, double value) throws IOException {
+            out.writeShort(Half.fromFloat((float) value));
+        }
+
+        @Override
+        public double read(DataInput in) throws IOException {
+            return Half.toFloat(in.readShort());
+        }
+
+        @Override
+        public double round(double value) {
+            return Half.toFloat(Half.fromFloat((float) value));
+        }
+    };
+
+    // How many bytes one value takes up
+    public final int bytes;
+
+    private Precision(int bytes) {
+        this.bytes = bytes;
+    }
+
+    public abstract void write(DataOutput out, double value) throws IOException;
+
+    public abstract double read(DataInput in) throws IOException;
+
+    // The value as it would come back after being stored at this precision
+    public abstract double round(double value);
+}
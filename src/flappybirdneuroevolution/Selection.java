@@ -0,0 +1,212 @@
+package flappybirdneuroevolution;
+
+import java.util.SplittableRandom;
+
+/**
+ *
+ * @author Preston Tang
+ *
+ * Ways of picking parents by fitness. Each one builds its tables once per
+ * generation in prepare(), after which every pick is cheap:
+ *
+ * PREFIX_SUM adds the fitness up as it goes and binary searches it, so a
+ * pick is O(log n).
+ * ALIAS is Vose's alias method, a pick is one random slot and one coin
+ * flip, so O(1).
+ * TOURNAMENT picks the fittest of a few random birds, which only cares
+ * about the order of the fitness and not how far apart it is.
+ *
+ * The first two pick a bird with a chance proportional to its fitness,
+ * the same as walking the list like poolSelection used to
+ *
+ */
+public enum Selection {
+
+    PREFIX_SUM {
+        @Override
+        public Selector create(Settings settings) {
+            return new PrefixSum();
+        }
+    },
+    ALIAS {
+        @Override
+        public Selector create(Settings settings) {
+            return new Alias();
+        }
+    },
+    TOURNAMENT {
+        @Override
+        public Selector create(Settings settings) {
+            return new Tournament(settings.tournamentSize);
+        }
+    };
+
+    public abstract Selector create(Settings settings);
+
+    public interface Selector {
+
+        /**
+         * Builds the tables for a generation. The fitness doesn't have
+         * to add up to 1, and is copied so the array can be reused.
+         *
+         * @param fitness How fit each bird is, none can be negative
+         * @param count How many birds there are
+         */
+        void prepare(double[] fitness, int count);
+
+        // The index of a parent
+        int pick(SplittableRandom random);
+    }
+
+    private static final class PrefixSum implements Selector {
+
+        private double[] cumulative = new double[0];
+        private int count;
+
+        @Override
+        public void prepare(double[] fitness, int count) {
+            if (cumulative.length < count) {
+                cumulative = new double[count];
+            }
+            this.count = count;
+
+            double sum = 0;
+            for (int i = 0; i < count; i++) {
+                sum += fitness[i];
+                cumulative[i] = sum;
+            }
+        }
+
+        @Override
+        public int pick(SplittableRandom random) {
+            double total = cumulative[count - 1];
+            if (!(total > 0)) {
+                return random.nextInt(count);
+            }
+
+            // The first bird whose running total is past r
+            double r = random.nextDouble() * total;
+            int low = 0, high = count - 1;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (cumulative[mid] > r) {
+                    high = mid;
+                } else {
+                    low = mid + 1;
+                }
+            }
+            return low;
+        }
+    }
+
+    private static final class Alias implements Selector {
+
+        // A slot keeps its own bird with chance probability[slot],
+        // otherwise it gives alias[slot]
+        private double[] probability = new double[0];
+        private int[] alias = new int[0];
+        private int[] small = new int[0], large = new int[0];
+        private int count;
+
+        @Override
+        public void prepare(double[] fitness, int count) {
+            if (probability.length < count) {
+                probability = new double[count];
+                alias = new int[count];
+                small = new int[count];
+                large = new int[count];
+            }
+            this.count = count;
+
+            double sum = 0;
+            for (int i = 0; i < count; i++) {
+                sum += fitness[i];
+            }
+
+            // Every slot on its own, when nothing has any fitness
+            if (!(sum > 0)) {
+                for (int i = 0; i < count; i++) {
+                    probability[i] = 1;
+                    alias[i] = i;
+                }
+                return;
+            }
+
+            // Scaled so the average slot is exactly 1
+            int smalls = 0, larges = 0;
+            double scale = count / sum;
+            for (int i = 0; i < count; i++) {
+                probability[i] = fitness[i] * scale;
+                if (probability[i] < 1) {
+                    small[smalls++] = i;
+                } else {
+                    large[larges++] = i;
+                }
+            }
+
+            // Each under-full slot is topped up from an over-full one
+            while (smalls > 0 && larges > 0) {
+                int s = small[--smalls];
+                int l = large[--larges];
+
+                alias[s] = l;
+                probability[l] = probability[l] + probability[s] - 1;
+                if (probability[l] < 1) {
+                    small[smalls++] = l;
+                } else {
+                    large[larges++] = l;
+                }
+            }
+
+            // Whatever's left is full up to rounding
+            while (larges > 0) {
+                int l = large[--larges];
+                probability[l] = 1;
+                alias[l] = l;
+            }
+            while (smalls > 0) {
+                int s = small[--smalls];
+                probability[s] = 1;
+                alias[s] = s;
+            }
+        }
+
+        @Override
+        public int pick(SplittableRandom random) {
+            int slot = random.nextInt(count);
+            return random.nextDouble() < probability[slot] ? slot : alias[slot];
+        }
+    }
+
+    private static final class Tournament implements Selector {
+
+        private final int size;
+        private double[] fitness = new double[0];
+        private int count;
+
+        Tournament(int size) {
+            this.size = Math.max(1, size);
+        }
+
+        @Override
+        public void prepare(double[] fitness, int count) {
+            if (this.fitness.length < count) {
+                this.fitness = new double[count];
+            }
+            System.arraycopy(fitness, 0, this.fitness, 0, count);
+            this.count = count;
+        }
+
+        @Override
+        public int pick(SplittableRandom random) {
+            int best = random.nextInt(count);
+            for (int i = 1; i < size; i++) {
+                int other = random.nextInt(count);
+                if (fitness[other] > fitness[best]) {
+                    best = other;
+                }
+            }
+            return best;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package flappybirdneuroevolution;
+
+/**
+ *
+ * @author Preston Tang
+ *
+ * All the knobs of the simulation in one place, so the game can be set up
+ * the same way with or without a screen
+ *
+ */
+public class Settings implements Cloneable {
+
+    // Size of the play area, Main overrides these to fit the screen
+    public double gameWidth = 1632;
+    public double gameHeight = 734.4;
+
+    // Default dimensions of each pipe
+    public double pipeWidth = 50;
+    public double pipeGapMin = 130;
+    public double pipeGapMax = 130;
+
+    public double gravity = 0.3;
+    public double jumpStrength = 5.0;
+
+    public int populationSize = 1000;
+
+    public double mutationRate = 0.05;
+
+    // How parents are picked, and how many birds each TOURNAMENT pick
+    // looks at
+    public Selection selection = Selection.PREFIX_SUM;
+    public int tournamentSize = 4;
+
+    // How two parents' brains are mixed into a child
+    public Crossover crossover = Crossover.UNIFORM;
+
+    // Which kernel from Activations the brains use, the fast ones trade a
+    // little accuracy for speed
+    public String activation = Activations.SIGMOID;
+
+    // What the whole population's brains are computed in, FLOAT halves
+    // the memory of a big population
+    public Precision precision = Precision.DOUBLE;
+
+    // What brains are saved in, HALF makes them a quarter of the size.
+    // The file says which one it is, so loading works with any of them
+    public Precision storagePrecision = Precision.DOUBLE;
+
+    // How much of the screen the pipes moves every frame
+    public double pipeUpdatePercentage = 0.002;
+
+    // Every course of pipes is worked out from this, the same seed
+    // always gives the same pipes
+    public long seed = System.nanoTime();
+
+    // A generation ends after this many ticks even if birds are still
+    // flying, 0 lets it run until they're all dead. Survivors are scored
+    // by how far they got. In steady state it's how long one bird can fly
+    public int tickBudget = 0;
+
+    // A generation also ends as soon as a bird reaches this score, which
+    // counts as the game being solved, 0 turns it off
+    public int solvedScore = 0;
+
+    // How many threads step the birds, 1 keeps everything on the calling thread
+    // The result is the same no matter how many are used
+    public int threads = 1;
+
+    // What percentage of the population will be chosen as parents, they're
+    // paired up and the pairs take turns having children
+    public double parentPercentage = 0.1;
+
+    // How many of the best birds are carried over to the next generation
+    // unchanged
+    public int elites = 2;
+
+    // Instead of generations, replace every bird as soon as it dies with
+    // a child of the best birds so far, see SteadyState
+    public boolean steadyState = false;
+
+    // How many of the best dead birds steady state remembers as parents
+    public int archiveSize = 32;
+
+    // How many courses every bird is scored on before it's bred from,
+    // starting with the one it played, and how those scores become its
+    // fitness. Needs a tick budget when it's more than 1, and steady
+    // state always uses the one course
+    public int courses = 1;
+    public Aggregation courseAggregation = Aggregation.MEAN;
+
+    // Which score QUANTILE takes, 0 is the worst course and 1 the best
+    public double courseQuantile = 0.25;
+
+    // How many populations Islands runs side by side, each on its own
+    // thread and its own courses
+    public int islands = 1;
+
+    // Every this many generations each island sends its best birds on to
+    // the next one, and how many it sends
+    public int migrationInterval = 10;
+    public int migrants = 2;
+
+    // How many genomes go to an evaluation worker per request, and what
+    // their weights are sent in. HALF is a quarter of the traffic, but
+    // then the workers play slightly different brains
+    public int evaluationBatch = 1024;
+    public Precision transferPrecision = Precision.DOUBLE;
+
+    // A copy that can be changed without touching this one
+    public Settings copy() {
+        try {
+            return (Settings) clone();
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
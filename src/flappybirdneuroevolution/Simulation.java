@@ -0,0 +1,774 @@
+package flappybirdneuroevolution;
+
+import flappybirdneuroevolution.NeuralNetwork.ActivationFunction;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ *
+ * @author Preston Tang
+ *
+ * The game and the genetic algorithm, without anything JavaFX in it.
+ * Main only looks at this to draw it, and HeadlessTrainer runs it
+ * without a screen at all
+ *
+ */
+public class Simulation {
+
+    // Called whenever a generation is over
+    public interface GenerationListener {
+
+        void generationEnded(GenerationStats stats);
+    }
+
+    private final Settings settings;
+
+    // The settings' activation, looked up once and shared by every brain
+    private final ActivationFunction activation;
+
+    // Every random brain, crossover and mutation comes from here, so the
+    // seed decides them as well as the pipes
+    private final Mutator mutator;
+
+    // Pipes are spaced a quarter of the screen apart, so there are never
+    // more than 6 in the game at once
+    private static final int MAX_PIPES = 8;
+    private final PipeRing pipes = new PipeRing(MAX_PIPES);
+
+    // Where the pipes come from, a new course is started every time
+    // the pipes are reset
+    private Course course;
+    private long coursesStarted;
+    private int nextPipe;
+
+    // Array to keep track of dead birds
+    private ArrayList<Bird> birdsBackup = new ArrayList<>();
+
+    // The birds still flying
+    private Population population;
+
+    // Where every generation's brains are bred, so turning over a
+    // generation doesn't allocate
+    private final GenomeArena arena;
+
+    // The birds of the generation being made, reused every time
+    private final ArrayList<Bird> nextBirds = new ArrayList<>();
+
+    // Breeds each generation from the dead birds of the last
+    private final Breeder breeder;
+
+    // How many of the birds at the front of the population are elites
+    // carried over from the last generation
+    private int carried;
+
+    // The best birds of the generation that just ended, best first, kept
+    // for emigrate() since their brains are bred over afterwards
+    private double[] leaderGenomes = new double[0];
+    private double[] leaderScores = new double[0];
+    private int leaders;
+
+    // Scores the dead birds on several courses, only made when there's
+    // more than one and generations to score
+    private Evaluator evaluator;
+    private double[] genomes = new double[0];
+    private double[] scores = new double[0];
+
+    // Only made in steady state mode
+    private SteadyState steady;
+
+    // The birds that died this tick in steady state mode
+    private final ArrayList<Bird> dead = new ArrayList<>();
+
+    // Steady state counts a generation every populationSize births
+    private long births;
+    private double generationBest;
+
+    // The closest pipe, worked out once per tick for every bird
+    private final PipeContext context = new PipeContext();
+
+    // Splits the birds between cores, null when running on one thread
+    private ForkJoinPool workers;
+
+    // Fewer birds than this per task isn't worth handing to another thread
+    private static final int MIN_BIRDS_PER_TASK = 256;
+
+    private int score = 0;
+    private int highscore = 0;
+    private int generation = 1;
+
+    private Bird bestBird;
+
+    // When off, only the best bird plays
+    private boolean trainingMode = true;
+
+    private GenerationListener listener;
+
+    // Filled in and handed to the listener whenever a generation ends
+    private final GenerationStats stats = new GenerationStats();
+    private long generationStart = System.nanoTime();
+    private long generationTicks;
+    private boolean generationTimedOut, generationSolved;
+
+    public Simulation(Settings settings) {
+        this.settings = settings;
+        activation = Activations.function(settings.activation);
+        // Split off so it doesn't share a stream with the courses, which
+        // are also worked out from the seed
+        mutator = new Mutator(settings.seed).split();
+
+        if (settings.threads > 1) {
+            workers = new ForkJoinPool(settings.threads);
+        }
+
+        arena = new GenomeArena(settings.populationSize, 4, 1, 3, 2, activation, settings.mutationRate,
+                settings.jumpStrength, settings.gameWidth, settings.gameHeight);
+        breeder = new Breeder(settings, arena, mutator, workers);
+
+        if (settings.courses > 1 && !settings.steadyState) {
+            evaluator = new Evaluator(settings, workers);
+        }
+
+        if (settings.steadyState) {
+            steady = new SteadyState(settings.populationSize, settings.archiveSize, 4, 1, 3, 2, activation,
+                    settings.mutationRate, settings.jumpStrength, settings.gameWidth, settings.gameHeight);
+        }
+
+        addStartingPipes();
+
+        randomGeneration(nextBirds);
+        populate(nextBirds);
+    }
+
+    // Advances the game by one frame
+    public void tick() {
+        if (!trainingMode) {
+            if (bestBird.isAlive()) {
+                score++;
+
+                if (score % 10 == 0) {
+                    updateHighscore();
+                }
+
+                pipeManagement();
+                context.update(pipes, bestBird.getX(), settings.gameHeight);
+
+                bestBird.update(settings.gravity);
+                bestBird.setScore(score);
+
+                // Dies when out of bounds or hits pipe
+                if (isOutOfBounds(bestBird.getY(), bestBird.getHeight())
+                        || (context.overlaps(bestBird.getX(), bestBird.getWidth())
+                        && context.hitsPipe(bestBird.getY(), bestBird.getHeight()))) {
+                    bestBird.setAlive(false);
+                }
+
+                // Move
+                bestBird.action(context.getPipe());
+
+            } else {
+                loadBackup();
+
+                // Temporary Bug Fix
+                // For some reason after it dies the loaded
+                // bird gets deleted
+                // Probably applies to birds that aren't loaded but
+                // generated in the current instance as well
+                bestBird.setScore(999999);
+            }
+        } else {
+            // If there are still birds, steady state always has some on the way
+            if (!population.isEmpty() || steady != null) {
+                score++;
+
+                if (score % 10 == 0) {
+                    if (steady == null) {
+                        updateHighscore();
+                        newBestBird();
+                    } else {
+                        steadyBestBird();
+                    }
+                }
+                pipeManagement();
+                context.update(pipes, population.getX(), settings.gameHeight);
+
+                // Move, check and think for every bird, split between
+                // cores when there's enough of them
+                int size = population.size();
+                if (workers == null || size < MIN_BIRDS_PER_TASK * 2) {
+                    stepBirds(0, size);
+                } else {
+                    int grain = Math.max(MIN_BIRDS_PER_TASK, size / (settings.threads * 4));
+                    workers.invoke(new StepTask(0, size, grain));
+                }
+
+                // Remove birds, always on this thread and in slot order
+                // so the result doesn't depend on the threads
+                generationTicks++;
+                if (steady == null) {
+                    population.removeDead(birdsBackup);
+
+                    // Cut the generation short, the birds still flying
+                    // are scored by how far they got
+                    if (!population.isEmpty() && generationOver()) {
+                        resetAndRepopulate();
+                    }
+                } else {
+                    // No bird flies past the budget, so it can't keep a
+                    // slot forever once it's learned the game
+                    double limit = steadyLimit();
+                    if (limit > 0) {
+                        population.killFrom(limit);
+                    }
+
+                    population.removeDead(dead);
+                    retireDead();
+                    refill();
+                }
+
+            } else {
+                // They've all died, time for new gen
+                resetAndRepopulate();
+            }
+        }
+    }
+
+    // One tick for the birds in slots from to to - 1, they only read the
+    // pipes and their own slots so ranges can run at the same time
+    private void stepBirds(int from, int to) {
+        population.step(from, to, settings.gravity);
+
+        // The birds all share one column, so unless the pipe is over it
+        // (which is most ticks) none of them can hit it
+        double size = population.getBirdSize();
+        boolean pipeOverhead = context.overlaps(population.getX(), size);
+
+        for (int i = from; i < to; i++) {
+            double y = population.getY(i);
+
+            // Dies when out of bounds or hits pipe
+            if (isOutOfBounds(y, size) || (pipeOverhead && context.hitsPipe(y, size))) {
+                population.kill(i);
+            }
+
+            population.writeInputs(i, context);
+        }
+
+        // Think for every bird at once
+        population.think(from, to);
+    }
+
+    // Halves the range until it's small enough to step directly
+    private class StepTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int from, to, grain;
+
+        StepTask(int from, int to, int grain) {
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= grain) {
+                stepBirds(from, to);
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new StepTask(from, mid, grain), new StepTask(mid, to, grain));
+            }
+        }
+    }
+
+    // Stops the worker threads, the simulation can't tick afterwards
+    public void shutdown() {
+        if (workers != null) {
+            workers.shutdown();
+        }
+    }
+
+    // A new bird with a random brain
+    public Bird createBird() {
+        Bird b = new Bird(settings.mutationRate, settings.jumpStrength, settings.gameWidth, settings.gameHeight,
+                mutator);
+        b.getBrain().setActivationFunction(activation);
+        return b;
+    }
+
+    // Whether the tick budget or the solved score has been reached
+    private boolean generationOver() {
+        generationTimedOut = settings.tickBudget > 0 && score >= settings.tickBudget;
+        generationSolved = settings.solvedScore > 0 && score >= settings.solvedScore;
+        return generationTimedOut || generationSolved;
+    }
+
+    // The score a steady state bird is retired at, 0 for no limit
+    private double steadyLimit() {
+        if (settings.tickBudget > 0 && settings.solvedScore > 0) {
+            return Math.min(settings.tickBudget, settings.solvedScore);
+        }
+        return Math.max(settings.tickBudget, settings.solvedScore);
+    }
+
+    // Hands the birds that just died to steady state and counts them
+    // towards the current generation
+    private void retireDead() {
+        for (int i = 0; i < dead.size(); i++) {
+            Bird b = dead.get(i);
+            generationBest = Math.max(generationBest, b.getScore());
+            if (settings.tickBudget > 0 && b.getScore() >= settings.tickBudget) {
+                generationTimedOut = true;
+            }
+            if (settings.solvedScore > 0 && b.getScore() >= settings.solvedScore) {
+                generationSolved = true;
+            }
+            steady.retire(b);
+        }
+        dead.clear();
+    }
+
+    // Tells the listener about the generation that just ended and starts
+    // timing the next one
+    private void endGeneration(int ended, int best, int survivors) {
+        long now = System.nanoTime();
+
+        stats.generation = ended;
+        stats.score = best;
+        stats.highscore = highscore;
+        stats.ticks = generationTicks;
+        stats.nanos = now - generationStart;
+        stats.survivors = survivors;
+        stats.timedOut = generationTimedOut;
+        stats.solved = generationSolved;
+
+        generationStart = now;
+        generationTicks = 0;
+        generationTimedOut = false;
+        generationSolved = false;
+
+        if (listener != null) {
+            listener.generationEnded(stats);
+        }
+    }
+
+    // Fills the population back up with children. A new bird starts in
+    // the middle of the screen, so it waits until no pipe is there
+    private void refill() {
+        if (context.overlaps(population.getX(), population.getBirdSize())) {
+            return;
+        }
+
+        while (population.size() < settings.populationSize) {
+            population.add(steady.spawn(population, settings.tournamentSize, settings.crossover, mutator), 0);
+
+            if (++births % settings.populationSize == 0) {
+                int ended = generation++;
+                int best = (int) generationBest;
+                generationBest = 0;
+
+                highscore = Math.max(highscore, best);
+                endGeneration(ended, best, 0);
+            }
+        }
+    }
+
+    // In steady state the best bird is the best one archived, copied so
+    // the archive can move on
+    private void steadyBestBird() {
+        Bird best = steady.getBest();
+        if (best != null && (bestBird == null || best.getScore() > bestBird.getScore())) {
+            bestBird = best.copy();
+        }
+        if (bestBird != null) {
+            highscore = Math.max(highscore, (int) bestBird.getScore());
+        }
+    }
+
+    // Finds a new best bird if there is one (comparison of score)
+    private void newBestBird() {
+        // A bird that's still flying has the current score, its own
+        // score is only written back when it dies
+        if (bestBird == null || (!bestBird.isAlive() && score > bestBird.getScore())) {
+            bestBird = population.size() != 1 ? population.getBird(
+                    mutator.getRandom().nextInt(0,
+                            population.size() - 1)) : population.getBird(0);
+        }
+    }
+
+    private void updateHighscore() {
+        highscore = score > highscore ? score : highscore;
+    }
+
+    // Handles pipe movement
+    private void pipeManagement() {
+        // Add pipes
+        if (settings.gameWidth - pipes.getLast().getX() > settings.gameWidth / 4) {
+            spawnPipe(settings.gameWidth);
+        }
+
+        // Remove pipes when out of screen, they leave in the order they came
+        while (!pipes.isEmpty() && pipes.getFirst().getX() + settings.pipeWidth < 0) {
+            pipes.removeFirst();
+        }
+
+        // Move the pipes to the left of the screen
+        for (int i = 0; i < pipes.size(); i++) {
+            pipes.get(i).update();
+        }
+    }
+
+    // Used when switching between best bird mode and training mode
+    public void loadBackup() {
+        //Create the first 2 pipes
+        addStartingPipes();
+
+        ArrayList<Bird> birds = new ArrayList<>();
+        population.removeAll(birds);
+        birds.addAll(birdsBackup);
+
+        for (Bird b : birds) {
+            b.setAlive(true);
+            b.setScore(0);
+        }
+
+        birdsBackup.clear();
+        populate(birds);
+        trainingMode = true;
+    }
+
+    // Only lets the best bird play, on a fresh set of pipes
+    public void startBestBirdMode() {
+        trainingMode = false;
+
+        addStartingPipes();
+        score = 0;
+
+        bestBird.resetPosition();
+        bestBird.setAlive(true);
+    }
+
+    // Creates the next generation as clones of the current saved best bird
+    public void deriveFromBest() {
+        if (steady == null) {
+            population.clear();
+        } else {
+            // Their slots have to go back to the pool
+            population.removeAll(dead);
+            retireDead();
+        }
+        birdsBackup.clear();
+
+        birdsBackup.add(bestBird);
+
+        bestBird.resetPosition();
+
+        for (int i = 0; i < settings.populationSize - 1; i++) {
+            birdsBackup.add(new Bird(bestBird.getBrain(), settings.mutationRate, settings.jumpStrength,
+                    settings.gameWidth, settings.gameHeight, mutator));
+        }
+
+        loadBackup();
+    }
+
+    public void resetAndRepopulate() {
+        long playedCourse = course.getSeed();
+
+        // Create the first 2 pipes
+        addStartingPipes();
+
+        // Steady state has no generations to end, so every bird is
+        // retired and replaced on the fresh pipes instead
+        if (steady != null) {
+            population.removeAll(dead);
+            retireDead();
+            score = 0;
+            context.update(pipes, population.getX(), settings.gameHeight);
+            refill();
+            return;
+        }
+
+        int survivors = population.size();
+        population.removeAll(birdsBackup);
+        ArrayList<Bird> birds = nextBirds;
+        birds.clear();
+        int endedGeneration = generation;
+        int endedScore = score;
+        updateHighscore();
+        generation++;
+        // If it passed the first 2 pipes
+        if (score > 270) {
+            if (evaluator != null) {
+                // Birds still flying were only scored that far if the
+                // generation was cut short, by being solved or by hand
+                rescore(playedCourse, survivors == 0 || generationTimedOut);
+            }
+            keepLeaders();
+
+            // Generate next generation
+            generate(birds);
+
+            for (Bird b : birds) {
+                b.setAlive(true);
+            }
+            birdsBackup.clear();
+
+            // If it doesn't even pass the first 2 pipes just wipe everything and restart
+        } else {
+            generation = 1;
+            leaders = 0;
+
+            randomGeneration(birds);
+
+            birdsBackup.clear();
+        }
+
+        // The new birds are scored from 0
+        score = 0;
+        populate(birds);
+
+        endGeneration(endedGeneration, endedScore, survivors);
+    }
+
+    // Fills the (empty) population with the given birds
+    private void populate(List<Bird> birds) {
+        if (population == null || population.getCapacity() < birds.size()) {
+            population = new Population(Math.max(settings.populationSize, birds.size()),
+                    settings.gameWidth * 0.05, Bird.SIZE, settings.jumpStrength, activation.kernel,
+                    settings.precision);
+        }
+
+        // Steady state scores every bird from when it's added
+        for (Bird b : birds) {
+            population.add(b, steady == null ? score : 0);
+        }
+    }
+
+    // Breeds the next generation into the arena. The best birds go
+    // through unchanged, the rest are children of pairs from the
+    // parent pool
+    private void generate(List<Bird> birds) {
+        breeder.breed(birdsBackup, birds);
+        carried = breeder.getEliteCount();
+        swapGenerations();
+    }
+
+    // Scores the dead birds again on settings.courses courses, starting
+    // with the one they just played, so one lucky course can't make a
+    // bird a parent. What they scored on that one is used as it is if
+    // they finished it
+    private void rescore(long playedCourse, boolean finished) {
+        int count = birdsBackup.size();
+        int genomeSize = getGenomeSize();
+        if (scores.length < count) {
+            genomes = new double[count * genomeSize];
+            scores = new double[count];
+        }
+
+        for (int i = 0; i < count; i++) {
+            NeuralNetwork brain = birdsBackup.get(i).getBrain();
+            System.arraycopy(brain.genome, brain.genomeOffset, genomes, i * genomeSize, genomeSize);
+            scores[i] = birdsBackup.get(i).getScore();
+        }
+
+        if (finished) {
+            evaluator.evaluateOthers(genomes, count, playedCourse, scores);
+        } else {
+            evaluator.evaluate(genomes, count, playedCourse, scores);
+        }
+
+        for (int i = 0; i < count; i++) {
+            birdsBackup.get(i).setScore(scores[i]);
+        }
+    }
+
+    // Copies the brains of the best settings.migrants dead birds, if this
+    // simulation is an island that sends any
+    private void keepLeaders() {
+        int count = settings.islands > 1 ? Math.min(Math.max(0, settings.migrants), birdsBackup.size()) : 0;
+        int genomeSize = getGenomeSize();
+        if (leaderScores.length < count) {
+            leaderGenomes = new double[count * genomeSize];
+            leaderScores = new double[count];
+        }
+
+        // Insertion into the sorted leaders, like picking elites
+        leaders = 0;
+        for (Bird b : birdsBackup) {
+            double score = b.getScore();
+            if (leaders == count && (count == 0 || score <= leaderScores[count - 1])) {
+                continue;
+            }
+
+            int j = leaders < count ? leaders++ : count - 1;
+            while (j > 0 && leaderScores[j - 1] < score) {
+                leaderScores[j] = leaderScores[j - 1];
+                System.arraycopy(leaderGenomes, (j - 1) * genomeSize, leaderGenomes, j * genomeSize, genomeSize);
+                j--;
+            }
+            NeuralNetwork brain = b.getBrain();
+            System.arraycopy(brain.genome, brain.genomeOffset, leaderGenomes, j * genomeSize, genomeSize);
+            leaderScores[j] = score;
+        }
+    }
+
+    // A generation of random birds from the arena
+    private void randomGeneration(List<Bird> birds) {
+        for (int i = 0; i < arena.getCapacity(); i++) {
+            birds.add(arena.randomize(i, mutator));
+        }
+        carried = 0;
+        swapGenerations();
+    }
+
+    // The birds that just played will be overwritten by the generation
+    // after this one, so the best bird can't stay one of them
+    private void swapGenerations() {
+        arena.swap();
+        bestBird = arena.keep(bestBird);
+    }
+
+    private boolean isOutOfBounds(double y, double size) {
+        return y < 0 || y + size > settings.gameHeight;
+    }
+
+    // Puts the course's next pipe at x
+    private void spawnPipe(double x) {
+        double gap = course.gap(nextPipe, settings.pipeGapMin, settings.pipeGapMax);
+        double top = course.opening(nextPipe, gap, settings.gameHeight);
+        nextPipe++;
+
+        pipes.addLast().set(x, top, gap, settings.pipeWidth,
+                settings.gameWidth * settings.pipeUpdatePercentage);
+    }
+
+    // Clears the pipes and starts the next course from its first 2 pipes
+    private void addStartingPipes() {
+        pipes.clear();
+        course = Course.forRun(settings.seed, coursesStarted++);
+        nextPipe = 0;
+
+        spawnPipe(settings.gameWidth / 2.0);
+        spawnPipe(settings.gameWidth - (settings.gameWidth / 4.0));
+    }
+
+    /**
+     * Copies the brains of up to count of the best birds into genomes,
+     * one after the other, for another simulation to take in. Right after
+     * a generation ends these are the best birds of the one that ended,
+     * whether or not any were carried over as elites, in steady state the
+     * best archived birds. A generation that was wiped for not passing the
+     * first 2 pipes sends none.
+     *
+     * @param genomes Gets count * getGenomeSize() values
+     * @param scores Gets what each bird scored
+     *
+     * @return How many birds were copied, fewer than count if there
+     * weren't enough good ones
+     */
+    public int emigrate(double[] genomes, double[] scores, int count) {
+        int genomeSize = getGenomeSize();
+
+        if (steady == null) {
+            int found = Math.min(count, leaders);
+            System.arraycopy(leaderGenomes, 0, genomes, 0, found * genomeSize);
+            System.arraycopy(leaderScores, 0, scores, 0, found);
+            return found;
+        }
+
+        int found = Math.min(count, steady.getArchived());
+        for (int i = 0; i < found; i++) {
+            Bird b = steady.getArchived(i);
+            NeuralNetwork brain = b.getBrain();
+            System.arraycopy(brain.genome, brain.genomeOffset, genomes, i * genomeSize, genomeSize);
+            scores[i] = b.getScore();
+        }
+        return found;
+    }
+
+    /**
+     * Takes in brains from another simulation, laid out like emigrate()
+     * writes them. They replace the children at the back of a generation
+     * that has just started, the elites at the front are left alone. In
+     * steady state they go into the archive as parents instead.
+     */
+    public void immigrate(double[] genomes, double[] scores, int count) {
+        int genomeSize = getGenomeSize();
+
+        if (steady != null) {
+            for (int i = 0; i < count; i++) {
+                steady.adopt(genomes, i * genomeSize, scores[i]);
+            }
+            return;
+        }
+
+        int replaced = Math.min(count, population.size() - carried);
+        for (int i = 0; i < replaced; i++) {
+            int slot = population.size() - 1 - i;
+            NeuralNetwork brain = population.getBird(slot).getBrain();
+            System.arraycopy(genomes, i * genomeSize, brain.genome, brain.genomeOffset, genomeSize);
+            population.reload(slot);
+        }
+    }
+
+    // How many weights and biases one brain has
+    public int getGenomeSize() {
+        return NeuralNetwork.genomeSize(4, 1, 3, 2);
+    }
+
+    public Settings getSettings() {
+        return settings;
+    }
+
+    public PipeRing getPipes() {
+        return pipes;
+    }
+
+    public Course getCourse() {
+        return course;
+    }
+
+    public Population getPopulation() {
+        return population;
+    }
+
+    public List<Bird> getBirdsBackup() {
+        return birdsBackup;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public int getHighscore() {
+        return highscore;
+    }
+
+    public int getGeneration() {
+        return generation;
+    }
+
+    public boolean isTrainingMode() {
+        return trainingMode;
+    }
+
+    public Bird getBestBird() {
+        return bestBird;
+    }
+
+    public void setBestBird(Bird bestBird) {
+        this.bestBird = bestBird;
+    }
+
+    // Forgets the best bird and the highscore
+    public void resetBest() {
+        highscore = 0;
+        bestBird = null;
+    }
+
+    public void setGenerationListener(GenerationListener listener) {
+        this.listener = listener;
+    }
+}
@@ -0,0 +1,136 @@
+package flappybirdneuroevolution;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ *
+ * @author Preston Tang
+ *
+ * Runs a Simulation on its own thread. The speed is either a number of
+ * ticks per 60th of a second, or UNLIMITED to tick as fast as the CPU
+ * allows. Anything that changes the simulation from outside has to go
+ * through submit(), and the UI reads snapshots instead of the simulation
+ *
+ */
+public class SimulationRunner implements Runnable {
+
+    public static final int UNLIMITED = -1;
+
+    private static final long FRAME_NANOS = 1_000_000_000L / 60;
+
+    private final Simulation sim;
+    private final ConcurrentLinkedQueue<Runnable> commands = new ConcurrentLinkedQueue<>();
+
+    private volatile int ticksPerFrame = 1;
+    private volatile boolean running;
+    private Thread thread;
+
+    // Two snapshots take turns, the simulation fills the one the UI isn't
+    // looking at, and only when the UI is done with the last one
+    private final Snapshot[] snapshots = {new Snapshot(), new Snapshot()};
+    private volatile Snapshot latest;
+    private volatile boolean snapshotWanted = true;
+
+    public SimulationRunner(Simulation sim) {
+        this.sim = sim;
+        latest = snapshots[0];
+        latest.capture(sim);
+    }
+
+    public void start() {
+        running = true;
+        thread = new Thread(this, "Simulation");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // Stops the thread and waits for it to finish its current tick
+    public void stop() throws InterruptedException {
+        running = false;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            thread.join();
+        }
+        sim.shutdown();
+    }
+
+    @Override
+    public void run() {
+        long nextFrame = System.nanoTime();
+
+        while (running) {
+            runCommands();
+
+            int ticks = ticksPerFrame;
+            if (ticks == UNLIMITED) {
+                sim.tick();
+                publishSnapshot();
+                continue;
+            }
+
+            for (int i = 0; i < ticks; i++) {
+                sim.tick();
+            }
+            publishSnapshot();
+
+            // Wait for the next frame, but never try to catch up on
+            // frames that were missed
+            nextFrame += FRAME_NANOS;
+            long wait = nextFrame - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            } else {
+                nextFrame = System.nanoTime();
+            }
+        }
+    }
+
+    private void runCommands() {
+        Runnable command;
+        while ((command = commands.poll()) != null) {
+            try {
+                command.run();
+            } catch (RuntimeException ex) {
+                ex.printStackTrace();
+            }
+        }
+    }
+
+    private void publishSnapshot() {
+        if (snapshotWanted) {
+            snapshotWanted = false;
+
+            Snapshot next = latest == snapshots[0] ? snapshots[1] : snapshots[0];
+            next.capture(sim);
+            latest = next;
+        }
+    }
+
+    // Runs the command on the simulation thread before the next tick
+    public void submit(Runnable command) {
+        commands.add(command);
+    }
+
+    /**
+     * The most recent snapshot. It won't change until
+     * {@link #releaseSnapshot()} is called, so call that once done
+     * reading it.
+     */
+    public Snapshot getSnapshot() {
+        return latest;
+    }
+
+    // Lets the simulation write a new snapshot
+    public void releaseSnapshot() {
+        snapshotWanted = true;
+    }
+
+    public int getTicksPerFrame() {
+        return ticksPerFrame;
+    }
+
+    public void setTicksPerFrame(int ticksPerFrame) {
+        this.ticksPerFrame = ticksPerFrame;
+    }
+}
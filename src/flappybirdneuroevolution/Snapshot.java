@@ -0,0 +1,76 @@
+package flappybirdneuroevolution;
+
+/**
+ *
+ * @author Preston Tang
+ *
+ * A copy of everything the UI shows, taken on the simulation thread so
+ * the UI can draw it without touching the simulation while it runs
+ *
+ */
+public class Snapshot {
+
+    // What the labels show
+    public int score, highscore, generation;
+    public int birdCount, backupCount;
+    public boolean trainingMode;
+
+    // The birds being drawn, they all share x and size
+    public int shownBirds;
+    public double birdX, birdSize;
+    public double[] birdY = new double[0];
+
+    // The pipes, oldest first
+    public int pipeCount;
+    public double[] pipeX = new double[0], pipeTop = new double[0],
+            pipeBottom = new double[0], pipeWidth = new double[0];
+
+    // Copies the simulation's current state, reusing the arrays when they're big enough
+    public void capture(Simulation sim) {
+        score = sim.getScore();
+        highscore = sim.getHighscore();
+        generation = sim.getGeneration();
+        trainingMode = sim.isTrainingMode();
+
+        Population population = sim.getPopulation();
+        birdCount = population.size();
+        backupCount = sim.getBirdsBackup().size();
+
+        if (trainingMode) {
+            shownBirds = population.size();
+            birdX = population.getX();
+            birdSize = population.getBirdSize();
+            if (birdY.length < shownBirds) {
+                birdY = new double[population.getCapacity()];
+            }
+            for (int i = 0; i < shownBirds; i++) {
+                birdY[i] = population.getY(i);
+            }
+        } else {
+            Bird bestBird = sim.getBestBird();
+            shownBirds = bestBird.isAlive() ? 1 : 0;
+            birdX = bestBird.getX();
+            birdSize = bestBird.getHeight();
+            if (birdY.length < 1) {
+                birdY = new double[1];
+            }
+            birdY[0] = bestBird.getY();
+        }
+
+        PipeRing pipes = sim.getPipes();
+        pipeCount = pipes.size();
+        if (pipeX.length < pipeCount) {
+            pipeX = new double[pipeCount];
+            pipeTop = new double[pipeCount];
+            pipeBottom = new double[pipeCount];
+            pipeWidth = new double[pipeCount];
+        }
+        for (int i = 0; i < pipeCount; i++) {
+            Pipe p = pipes.get(i);
+            pipeX[i] = p.getX();
+            pipeTop[i] = p.getTop();
+            pipeBottom[i] = p.getBottom();
+            pipeWidth[i] = p.getWidth();
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package flappybirdneuroevolution;
+
+import flappybirdneuroevolution.NeuralNetwork.ActivationFunction;
+import java.util.SplittableRandom;
+
+/**
+ *
+ * @author Preston Tang
+ *
+ * The births and deaths of steady state evolution, where there are no
+ * generations and every bird that dies is replaced straight away by a
+ * child of the best birds so far.
+ *
+ * The children live in a pool of birds made up front, like GenomeArena,
+ * and a slot goes back to the pool when its bird dies. The best birds
+ * that have died are kept in an archive of copies, so good brains aren't
+ * lost when their slot is reused
+ *
+ */
+public class SteadyState {
+
+    private final int genomeSize;
+
+    // pool[slot] thinks with genomes[slot * genomeSize...]
+    private final double[] genomes;
+    private final Bird[] pool;
+
+    // Slots of the pool nobody is using
+    private final int[] free;
+    private int freeCount;
+
+    // Copies of the best dead birds, best first
+    private final Bird[] archive;
+    private int archived;
+
+    public SteadyState(int capacity, int archiveSize, int inputNodes, int hiddenLayers, int hiddenNodes,
+            int outputNodes, ActivationFunction activation, double mutationRate, double jumpStrength,
+            double gameWidth, double gameHeight) {
+        genomeSize = NeuralNetwork.genomeSize(inputNodes, hiddenLayers, hiddenNodes, outputNodes);
+
+        genomes = new double[capacity * genomeSize];
+        pool = new Bird[capacity];
+        free = new int[capacity];
+        for (int slot = 0; slot < capacity; slot++) {
+            NeuralNetwork brain = new NeuralNetwork(inputNodes, hiddenLayers, hiddenNodes, outputNodes,
+                    genomes, slot * genomeSize);
+            brain.setActivationFunction(activation);
+            pool[slot] = Bird.withBrain(brain, mutationRate, jumpStrength, gameWidth, gameHeight);
+
+            // Handed out from slot 0 up
+            free[capacity - 1 - slot] = slot;
+        }
+        freeCount = capacity;
+
+        archive = new Bird[Math.max(1, archiveSize)];
+        for (int i = 0; i < archive.length; i++) {
+            NeuralNetwork brain = new NeuralNetwork(inputNodes, hiddenLayers, hiddenNodes, outputNodes);
+            brain.setActivationFunction(activation);
+            archive[i] = Bird.withBrain(brain, mutationRate, jumpStrength, gameWidth, gameHeight);
+        }
+    }
+
+    /**
+     * Takes in a bird that just died. It's copied into the archive if it
+     * did well enough, and its slot goes back to the pool if it had one.
+     */
+    public void retire(Bird b) {
+        NeuralNetwork brain = b.getBrain();
+        adopt(brain.genome, brain.genomeOffset, b.getScore());
+
+        if (brain.genome == genomes) {
+            free[freeCount++] = brain.genomeOffset / genomeSize;
+        }
+    }
+
+    /**
+     * Copies a genome into the archive if its score is good enough, as
+     * if a bird with that brain had just died.
+     *
+     * @param genome Where the genome is, it isn't kept
+     * @param offset Where in genome it starts
+     * @param score What it's ranked by
+     */
+    public void adopt(double[] genome, int offset, double score) {
+        if (archived < archive.length || score > archive[archived - 1].getScore()) {
+            // The entry that gets dropped is reused for the new one
+            int j = archived < archive.length ? archived++ : archived - 1;
+            Bird entry = archive[j];
+            while (j > 0 && archive[j - 1].getScore() < score) {
+                archive[j] = archive[j - 1];
+                j--;
+            }
+            archive[j] = entry;
+
+            NeuralNetwork to = entry.getBrain();
+            System.arraycopy(genome, offset, to.genome, to.genomeOffset, genomeSize);
+            entry.setScore(score);
+            entry.setAlive(false);
+        }
+    }
+
+    /**
+     * Breeds a new bird into a free slot of the pool. Both parents are
+     * the winners of tournaments between archived birds and birds still
+     * flying, by score. With nobody to pick from the bird is random.
+     *
+     * @param population The birds still flying, their score so far is
+     * what they're judged by
+     * @param tournamentSize How many birds each tournament looks at
+     *
+     * @return The child, reset to the start
+     */
+    public Bird spawn(Population population, int tournamentSize, Crossover crossover, Mutator mutator) {
+        if (freeCount == 0) {
+            throw new IllegalStateException("Every bird in the pool is in use");
+        }
+        Bird child = pool[free[--freeCount]];
+        NeuralNetwork brain = child.getBrain();
+
+        if (archived + population.size() == 0) {
+            brain.randomizeBoth(mutator);
+        } else {
+            Bird parent1 = tournament(population, tournamentSize, mutator.getRandom());
+            Bird parent2 = tournament(population, tournamentSize, mutator.getRandom());
+
+            parent1.getBrain().crossover(parent2.getBrain(), brain, crossover, mutator);
+            brain.mutateBiases(child.getMutationRate(), mutator);
+            brain.mutateWeights(child.getMutationRate(), mutator);
+        }
+
+        child.reset();
+        return child;
+    }
+
+    // The best of a few random birds from the archive and the population
+    private Bird tournament(Population population, int size, SplittableRandom random) {
+        int candidates = archived + population.size();
+
+        Bird best = null;
+        double bestScore = -1;
+        for (int i = 0; i < Math.max(1, size); i++) {
+            int pick = random.nextInt(candidates);
+
+            Bird b;
+            double score;
+            if (pick < archived) {
+                b = archive[pick];
+                score = b.getScore();
+            } else {
+                b = population.getBird(pick - archived);
+                score = population.getScore(pick - archived);
+            }
+
+            if (score > bestScore) {
+                best = b;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    // The best bird that has died so far, null before any has
+    public Bird getBest() {
+        return archived > 0 ? archive[0] : null;
+    }
+
+    // The archived bird with the given rank, 0 being the best
+    public Bird getArchived(int rank) {
+        return archive[rank];
+    }
+
+    public int getArchived() {
+        return archived;
+    }
+}
@@ -0,0 +1,438 @@
+package flappybirdneuroevolution;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ * @author Preston Tang
+ *
+ * Trains many headless simulations with different settings at the same
+ * time and writes how each one did to a CSV file, a row as soon as each
+ * job is done.
+ *
+ * The spec is a text file of "name = value" lines, # starts a comment.
+ * A name is any field of Settings, and its value is one value, a list
+ * like "500, 1000, 2000", or in random mode a range like "0.01..0.1".
+ * These set up the sweep itself:
+ *
+ * mode = grid runs every combination of the lists, random picks samples
+ * combinations at random
+ * samples = how many jobs random mode runs
+ * repeats = how many times each combination runs, each with its own seed
+ * generations, seconds = when a job stops, whichever comes first, 0
+ * seconds for no time limit. A job also stops once a generation is solved
+ * jobs = how many jobs run at once, each on one thread
+ * sweepSeed = where the random picks and the seeds of jobs come from,
+ * unless the spec gives a seed itself
+ *
+ * A generation with a perfect bird would never end, so without seconds
+ * every job needs a tickBudget above 0. A generation only counts as solved
+ * when its job has a solvedScore above 0, otherwise its solvedAt column
+ * stays empty
+ *
+ * Usage: Sweep [spec file] [CSV file, - for the console] [jobs at once]
+ *
+ */
+public class Sweep {
+
+    // The values one setting can take
+    private static final class Parameter {
+
+        final Field field;
+        final List<Object> values = new ArrayList<>();
+
+        // Only for ranges, which random mode picks anywhere in
+        double low, high;
+        boolean range;
+
+        Parameter(Field field) {
+            this.field = field;
+        }
+
+        Object pick(SplittableRandom random) {
+            if (!range) {
+                return values.get(random.nextInt(values.size()));
+            }
+
+            Class<?> type = field.getType();
+            if (type == int.class) {
+                return (int) low + random.nextInt((int) high - (int) low + 1);
+            }
+            if (type == long.class) {
+                return (long) low + random.nextLong((long) high - (long) low + 1);
+            }
+            return low + random.nextDouble() * (high - low);
+        }
+    }
+
+    // One run of a simulation
+    private static final class Job {
+
+        final int index;
+        final Settings settings;
+        final Object[] values;
+
+        Job(int index, Settings settings, Object[] values) {
+            this.index = index;
+            this.settings = settings;
+            this.values = values;
+        }
+    }
+
+    private final List<Parameter> parameters = new ArrayList<>();
+
+    private boolean random;
+    private int samples = 20;
+    private int repeats = 1;
+    private int generations = 100;
+    private double seconds;
+    private int concurrentJobs = Runtime.getRuntime().availableProcessors();
+    private long sweepSeed = System.nanoTime();
+
+    // Whether the spec gave the seed, otherwise every job gets its own
+    private boolean seeded;
+
+    private PrintWriter csv;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: Sweep [spec file] [CSV file, - for the console] [jobs at once]");
+            return;
+        }
+
+        Sweep sweep;
+        try (BufferedReader reader = new BufferedReader(new FileReader(args[0]))) {
+            sweep = parse(reader);
+        }
+        if (args.length > 2) {
+            sweep.concurrentJobs = Integer.parseInt(args[2]);
+        }
+
+        String output = args.length > 1 ? args[1] : "-";
+        try (PrintWriter out = output.equals("-") ? new PrintWriter(new OutputStreamWriter(System.out))
+                : new PrintWriter(new FileWriter(output))) {
+            sweep.run(out);
+        }
+    }
+
+    public static Sweep parse(BufferedReader reader) throws IOException {
+        Sweep sweep = new Sweep();
+
+        String line;
+        int number = 0;
+        while ((line = reader.readLine()) != null) {
+            number++;
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+
+            int equals = line.indexOf('=');
+            if (equals < 0) {
+                throw new IllegalArgumentException("Line " + number + " isn't name = value: " + line);
+            }
+            String name = line.substring(0, equals).trim();
+            String value = line.substring(equals + 1).trim();
+
+            try {
+                sweep.set(name, value);
+            } catch (IllegalArgumentException ex) {
+                throw new IllegalArgumentException("Line " + number + ": " + ex.getMessage(), ex);
+            }
+        }
+
+        if (!sweep.random) {
+            for (Parameter p : sweep.parameters) {
+                if (p.range) {
+                    throw new IllegalArgumentException(p.field.getName()
+                            + " is a range, grid mode needs a list of values");
+                }
+            }
+        }
+
+        if (sweep.seconds <= 0 && !sweep.isPositive("tickBudget")) {
+            throw new IllegalArgumentException("Jobs could run forever, give seconds or a tickBudget above 0");
+        }
+        return sweep;
+    }
+
+    /**
+     * Whether a whole number setting is above 0 in every job. The last
+     * line of the spec that sets it wins, like it does for the jobs.
+     */
+    private boolean isPositive(String name) {
+        for (int i = parameters.size() - 1; i >= 0; i--) {
+            Parameter p = parameters.get(i);
+            if (!p.field.getName().equals(name)) {
+                continue;
+            }
+
+            // A range picks whole numbers from low to high
+            if (p.range) {
+                return (long) p.low > 0;
+            }
+            for (Object value : p.values) {
+                if (((Number) value).longValue() <= 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        try {
+            return ((Number) Settings.class.getField(name).get(new Settings())).longValue() > 0;
+        } catch (ReflectiveOperationException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private void set(String name, String value) {
+        switch (name) {
+            case "mode":
+                if (!value.equals("grid") && !value.equals("random")) {
+                    throw new IllegalArgumentException("The mode is grid or random, not " + value);
+                }
+                random = value.equals("random");
+                return;
+            case "samples":
+                samples = Integer.parseInt(value);
+                return;
+            case "repeats":
+                repeats = Math.max(1, Integer.parseInt(value));
+                return;
+            case "generations":
+                generations = Integer.parseInt(value);
+                return;
+            case "seconds":
+                seconds = Double.parseDouble(value);
+                return;
+            case "jobs":
+                concurrentJobs = Integer.parseInt(value);
+                return;
+            case "sweepSeed":
+                sweepSeed = Long.parseLong(value);
+                return;
+        }
+
+        Field field;
+        try {
+            field = Settings.class.getField(name);
+        } catch (NoSuchFieldException ex) {
+            throw new IllegalArgumentException("There's no setting called " + name);
+        }
+        if (Modifier.isStatic(field.getModifiers())) {
+            throw new IllegalArgumentException("There's no setting called " + name);
+        }
+
+        Parameter p = new Parameter(field);
+        int dots = value.indexOf("..");
+        if (dots >= 0) {
+            if (field.getType() != int.class && field.getType() != long.class && field.getType() != double.class) {
+                throw new IllegalArgumentException(name + " isn't a number, so it can't be a range");
+            }
+            p.range = true;
+            p.low = Double.parseDouble(value.substring(0, dots).trim());
+            p.high = Double.parseDouble(value.substring(dots + 2).trim());
+        } else {
+            for (String v : value.split(",")) {
+                p.values.add(parseValue(field.getType(), v.trim()));
+            }
+        }
+
+        if (name.equals("seed")) {
+            seeded = true;
+        }
+        parameters.add(p);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object parseValue(Class<?> type, String value) {
+        if (type == int.class) {
+            return Integer.parseInt(value);
+        } else if (type == long.class) {
+            return Long.parseLong(value);
+        } else if (type == double.class) {
+            return Double.parseDouble(value);
+        } else if (type == boolean.class) {
+            return Boolean.parseBoolean(value);
+        } else if (type == String.class) {
+            return value;
+        } else if (type.isEnum()) {
+            return Enum.valueOf((Class<? extends Enum>) type, value.toUpperCase());
+        }
+        throw new IllegalArgumentException("Settings of type " + type.getSimpleName() + " can't be swept");
+    }
+
+    // Every job of the sweep, in the order they're started
+    private List<Job> createJobs() {
+        List<Object[]> combinations = new ArrayList<>();
+
+        if (random) {
+            SplittableRandom rng = new SplittableRandom(sweepSeed);
+            for (int i = 0; i < samples; i++) {
+                Object[] values = new Object[parameters.size()];
+                for (int p = 0; p < values.length; p++) {
+                    values[p] = parameters.get(p).pick(rng);
+                }
+                combinations.add(values);
+            }
+        } else {
+            // Counts through every combination, the last parameter fastest
+            int[] at = new int[parameters.size()];
+            while (true) {
+                Object[] values = new Object[at.length];
+                for (int p = 0; p < at.length; p++) {
+                    values[p] = parameters.get(p).values.get(at[p]);
+                }
+                combinations.add(values);
+
+                int p = at.length - 1;
+                while (p >= 0 && ++at[p] == parameters.get(p).values.size()) {
+                    at[p--] = 0;
+                }
+                if (p < 0) {
+                    break;
+                }
+            }
+        }
+
+        List<Job> jobs = new ArrayList<>();
+        for (int c = 0; c < combinations.size(); c++) {
+            for (int r = 0; r < repeats; r++) {
+                Settings settings = new Settings();
+                // Jobs run side by side, so each gets one thread
+                settings.threads = 1;
+                Object[] values = combinations.get(c);
+                for (int p = 0; p < values.length; p++) {
+                    try {
+                        parameters.get(p).field.set(settings, values[p]);
+                    } catch (IllegalAccessException ex) {
+                        throw new IllegalStateException(ex);
+                    }
+                }
+
+                // Repeats of a combination each play their own courses
+                long base = seeded ? settings.seed : Course.derive(sweepSeed, c);
+                settings.seed = r == 0 ? base : Course.derive(base, r);
+
+                jobs.add(new Job(jobs.size(), settings, values));
+            }
+        }
+        return jobs;
+    }
+
+    /**
+     * Runs every job, concurrentJobs at a time, and writes a row to the
+     * CSV as each one finishes.
+     */
+    public void run(PrintWriter csv) throws InterruptedException {
+        this.csv = csv;
+
+        StringBuilder header = new StringBuilder("job");
+        for (Parameter p : parameters) {
+            header.append(',').append(p.field.getName());
+        }
+        header.append(",runSeed,generations,solvedAt,highscore,seconds,birdsPerSecond,stoppedBy,error");
+        csv.println(header);
+        csv.flush();
+
+        // A plain bounded pool, every job is one long task
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, concurrentJobs));
+        for (Job job : createJobs()) {
+            pool.execute(() -> runJob(job));
+        }
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+    }
+
+    private void runJob(Job job) {
+        Settings settings = job.settings;
+        long start = System.nanoTime();
+        long deadline = seconds > 0 ? start + (long) (seconds * 1e9) : Long.MAX_VALUE;
+
+        // generations ended, and the first one that was solved
+        final int[] ended = {0, 0};
+        String stoppedBy = "generations";
+        String error = "";
+
+        Simulation sim = null;
+        try {
+            sim = new Simulation(settings);
+            sim.setGenerationListener(stats -> {
+                ended[0]++;
+                if (stats.solved && ended[1] == 0) {
+                    ended[1] = ended[0];
+                }
+            });
+
+            long ticks = 0;
+            while (ended[0] < generations) {
+                sim.tick();
+                if (ended[1] > 0) {
+                    stoppedBy = "solved";
+                    break;
+                }
+                // Checking the clock every tick would cost more than the tick
+                if ((++ticks & 1023) == 0 && System.nanoTime() > deadline) {
+                    stoppedBy = "time";
+                    break;
+                }
+            }
+        } catch (Throwable ex) {
+            // The other jobs go on, this one gets a row saying what went
+            // wrong. That includes errors like running out of memory, whose
+            // memory is freed again once this job's simulation is dropped
+            stoppedBy = "error";
+            error = quote(ex.toString());
+        } finally {
+            if (sim != null) {
+                sim.shutdown();
+            }
+        }
+
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        // Every bird of a generation that ended has been played once
+        double birdsPerSecond = elapsed > 0 ? (double) ended[0] * settings.populationSize / elapsed : 0;
+
+        StringBuilder row = new StringBuilder().append(job.index);
+        for (Object value : job.values) {
+            row.append(',').append(value);
+        }
+        row.append(',').append(settings.seed)
+                .append(',').append(ended[0])
+                .append(',').append(ended[1] > 0 ? String.valueOf(ended[1]) : "")
+                .append(',').append(sim != null ? String.valueOf(sim.getHighscore()) : "")
+                .append(',').append(String.format(Locale.ROOT, "%.3f", elapsed))
+                .append(',').append(String.format(Locale.ROOT, "%.1f", birdsPerSecond))
+                .append(',').append(stoppedBy)
+                .append(',').append(error);
+
+        synchronized (csv) {
+            csv.println(row);
+            csv.flush();
+        }
+    }
+
+    // A CSV field on one line that can hold commas and quotes
+    private static String quote(String text) {
+        return '"' + text.replace("\r", " ").replace("\n", " ").replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,209 @@
+package flappybirdneuroevolution;
+
+import java.util.Arrays;
+
+/**
+ *
+ * @author Preston Tang
+ *
+ * Backpropagation for one NeuralNetwork without allocating anything. All
+ * the per-layer outputs, errors and gradients live in buffers made once
+ * here, and the network's weights and biases are updated in place.
+ *
+ * A trainer is tied to its network and isn't thread safe, the same as the
+ * network's own forward pass
+ *
+ */
+public class Trainer {
+
+    private final NeuralNetwork nn;
+
+    // outputs[0] is the input, outputs[l + 1] is what layer l produced
+    private final double[][] outputs;
+
+    // The error and gradient of the layer being worked on
+    private final double[] error, gradient;
+
+    // What the layer below should have produced, two buffers so one can
+    // be read while the other is written
+    private double[] target, nextTarget;
+
+    // Gradients added up over a mini-batch, laid out like the Mats
+    private final double[][] weightSums, biasSums;
+
+    public Trainer(NeuralNetwork nn) {
+        this.nn = nn;
+
+        int layers = nn.hiddenLayers + 1;
+        int widest = Math.max(nn.inputNodes, Math.max(nn.hiddenNodes, nn.outputNodes));
+
+        outputs = new double[layers + 1][];
+        outputs[0] = new double[nn.inputNodes];
+        weightSums = new double[layers][];
+        biasSums = new double[layers][];
+        for (int l = 0; l < layers; l++) {
+            outputs[l + 1] = new double[nn.weights[l].rows];
+            weightSums[l] = new double[nn.weights[l].size()];
+            biasSums[l] = new double[nn.biases[l].size()];
+        }
+
+        error = new double[widest];
+        gradient = new double[widest];
+        target = new double[widest];
+        nextTarget = new double[widest];
+    }
+
+    public NeuralNetwork getNetwork() {
+        return nn;
+    }
+
+    /**
+     * One step of backpropagation on a single sample, the same algorithm
+     * {@link NeuralNetwork#train(double[], double[])} has always used.
+     * Each layer is updated before its error is passed down, so the
+     * layer below sees the new weights.
+     */
+    public void train(double[] input, double[] correct) {
+        check(input, correct);
+        forward(input);
+
+        System.arraycopy(correct, 0, target, 0, nn.outputNodes);
+        for (int l = nn.hiddenLayers; l >= 0; l--) {
+            Mat w = nn.weights[l];
+            Mat b = nn.biases[l];
+            double[] out = outputs[l + 1];
+            double[] prev = outputs[l];
+
+            computeGradient(out, w.rows);
+
+            for (int r = 0; r < w.rows; r++) {
+                b.flat[b.offset + r] += gradient[r];
+
+                int row = w.offset + r * w.cols;
+                for (int c = 0; c < w.cols; c++) {
+                    w.flat[row + c] += gradient[r] * prev[c];
+                }
+            }
+
+            passDown(w, prev);
+        }
+    }
+
+    /**
+     * One step over a mini-batch. Every sample is run against the same
+     * weights and their gradients are averaged before anything changes,
+     * so unlike {@link #train(double[], double[])} the error is passed
+     * down through the weights from before the step.
+     *
+     * @param inputs The inputs of each sample
+     * @param correct The wanted outputs, in the same order as inputs
+     * @param from The first sample to use
+     * @param to One past the last sample to use
+     */
+    public void train(double[][] inputs, double[][] correct, int from, int to) {
+        if (inputs.length != correct.length) {
+            throw new IllegalArgumentException("There must be as many targets as inputs");
+        }
+        if (to <= from) {
+            return;
+        }
+
+        for (int l = 0; l <= nn.hiddenLayers; l++) {
+            Arrays.fill(weightSums[l], 0);
+            Arrays.fill(biasSums[l], 0);
+        }
+
+        for (int s = from; s < to; s++) {
+            check(inputs[s], correct[s]);
+            forward(inputs[s]);
+
+            System.arraycopy(correct[s], 0, target, 0, nn.outputNodes);
+            for (int l = nn.hiddenLayers; l >= 0; l--) {
+                Mat w = nn.weights[l];
+                double[] out = outputs[l + 1];
+                double[] prev = outputs[l];
+                double[] ws = weightSums[l];
+                double[] bs = biasSums[l];
+
+                computeGradient(out, w.rows);
+
+                for (int r = 0; r < w.rows; r++) {
+                    bs[r] += gradient[r];
+
+                    int row = r * w.cols;
+                    for (int c = 0; c < w.cols; c++) {
+                        ws[row + c] += gradient[r] * prev[c];
+                    }
+                }
+
+                passDown(w, prev);
+            }
+        }
+
+        double scale = 1.0 / (to - from);
+        for (int l = 0; l <= nn.hiddenLayers; l++) {
+            Mat w = nn.weights[l];
+            Mat b = nn.biases[l];
+            double[] ws = weightSums[l];
+            double[] bs = biasSums[l];
+
+            for (int i = 0; i < ws.length; i++) {
+                w.flat[w.offset + i] += ws[i] * scale;
+            }
+            for (int i = 0; i < bs.length; i++) {
+                b.flat[b.offset + i] += bs[i] * scale;
+            }
+        }
+    }
+
+    public void train(double[][] inputs, double[][] correct) {
+        train(inputs, correct, 0, inputs.length);
+    }
+
+    private void check(double[] input, double[] correct) {
+        if (input.length != nn.inputNodes) {
+            throw new IllegalArgumentException("Input must have " + nn.inputNodes + " element" + (nn.inputNodes == 1 ? "" : "s"));
+        }
+        if (correct.length != nn.outputNodes) {
+            throw new IllegalArgumentException("Output must have " + nn.outputNodes + " element" + (nn.outputNodes == 1 ? "" : "s"));
+        }
+    }
+
+    private void forward(double[] input) {
+        System.arraycopy(input, 0, outputs[0], 0, input.length);
+
+        ActivationKernel f = nn.getActivationFunction().kernel;
+        for (int l = 0; l <= nn.hiddenLayers; l++) {
+            NeuralNetwork.forwardLayer(nn.weights[l], nn.biases[l], outputs[l], outputs[l + 1], f);
+        }
+    }
+
+    // error = target - out, gradient = f'(out) * error * learning rate
+    private void computeGradient(double[] out, int rows) {
+        double learningRate = nn.getLearningRate();
+
+        System.arraycopy(out, 0, gradient, 0, rows);
+        nn.getActivationFunction().kernel.derivative(gradient, 0, rows);
+
+        for (int r = 0; r < rows; r++) {
+            error[r] = target[r] - out[r];
+            gradient[r] = gradient[r] * error[r] * learningRate;
+        }
+    }
+
+    // The layer below's target is its output plus the error sent back
+    // through the weights, w transposed times error
+    private void passDown(Mat w, double[] prev) {
+        for (int c = 0; c < w.cols; c++) {
+            double sum = 0;
+            for (int r = 0; r < w.rows; r++) {
+                sum += w.flat[w.offset + r * w.cols + c] * error[r];
+            }
+            nextTarget[c] = sum + prev[c];
+        }
+
+        double[] swap = target;
+        target = nextTarget;
+        nextTarget = swap;
+    }
+}